@@ -0,0 +1,44 @@
+package Controller;
+// ClinicContext.java
+
+import Model.SmartMedicalModel;
+import Model.TimeEventSystem;
+
+/**
+ * Everything that belongs to one clinic (tenant): its own clock, model with its feature
+ * configuration, and headless controller. Created by {@link ClinicRegistry}.
+ */
+public final class ClinicContext {
+    private final String tenantId;
+    private final TimeEventSystem tes;
+    private final SmartMedicalModel model;
+    private final SmartMedicalController controller;
+
+    ClinicContext(String tenantId, TimeEventSystem tes, SmartMedicalModel model, SmartMedicalController controller) {
+        this.tenantId = tenantId;
+        this.tes = tes;
+        this.model = model;
+        this.controller = controller;
+    }
+
+    public String getTenantId() {
+        return tenantId;
+    }
+
+    public TimeEventSystem getTimeEventSystem() {
+        return tes;
+    }
+
+    public SmartMedicalModel getModel() {
+        return model;
+    }
+
+    public SmartMedicalController getController() {
+        return controller;
+    }
+
+    void close() {
+        controller.stopWatchingFeatureModel();
+        model.close();
+    }
+}
@@ -0,0 +1,110 @@
+package Controller;
+// ClinicRegistry.java
+
+import Logger.Logger;
+import Model.InsuranceTierCache;
+import Model.SmartMedicalModel;
+import Model.StubInsuranceProvider;
+import Model.TimeEventSystem;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hosts several independent clinics in one JVM.
+ * <p>
+ * Each clinic gets its own {@link ClinicContext} (clock, model, feature configuration and
+ * headless controller) while the insurance tier cache and its loader threads are shared by all
+ * of them. Commands are routed to a clinic by tenant id with {@link #route(String, String)}.
+ * The singletons keep serving the single-clinic application and are not part of any registry.
+ */
+public class ClinicRegistry implements AutoCloseable {
+    private static final int LOADER_THREADS = 4;
+
+    private final ConcurrentHashMap<String, ClinicContext> clinics = new ConcurrentHashMap<>();
+    private final ExecutorService insuranceLoaders;
+    private final InsuranceTierCache insurance;
+
+    private final Logger logger = Logger.getInstance();
+
+    public ClinicRegistry() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(LOADER_THREADS, LOADER_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "insurance-loader");
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.insuranceLoaders = pool;
+        // patient identifiers are those of the insurance provider, so tiers can be shared across clinics
+        this.insurance = new InsuranceTierCache(new StubInsuranceProvider(200), 16384, 10 * 60_000, 5 * 60_000, pool);
+    }
+
+    /**
+     * Return the clinic of the given tenant, creating it on first use.
+     */
+    public ClinicContext getOrCreate(String tenantId) {
+        return clinics.computeIfAbsent(tenantId, this::newClinic);
+    }
+
+    /**
+     * @return the clinic of the given tenant, or null if it does not exist
+     */
+    public ClinicContext get(String tenantId) {
+        return clinics.get(tenantId);
+    }
+
+    public Set<String> getTenantIds() {
+        return Set.copyOf(clinics.keySet());
+    }
+
+    /**
+     * Remove a clinic. Its state is dropped with it.
+     *
+     * @return true if the clinic existed
+     */
+    public boolean remove(String tenantId) {
+        ClinicContext clinic = clinics.remove(tenantId);
+        if (clinic == null) return false;
+        clinic.close();
+        logger.log("Clinic", "Removed clinic " + tenantId);
+        return true;
+    }
+
+    /**
+     * Execute a command line (same syntax as the console) on the clinic of the given tenant.
+     *
+     * @return false if the tenant does not exist
+     */
+    public boolean route(String tenantId, String commandLine) {
+        ClinicContext clinic = clinics.get(tenantId);
+        if (clinic == null) {
+            logger.error("Clinic", "Unknown clinic " + tenantId);
+            return false;
+        }
+        clinic.getController().handleCommand(commandLine);
+        return true;
+    }
+
+    public InsuranceTierCache getInsuranceCache() {
+        return insurance;
+    }
+
+    private ClinicContext newClinic(String tenantId) {
+        TimeEventSystem tes = new TimeEventSystem();
+        SmartMedicalModel model = new SmartMedicalModel(tes, insurance);
+        SmartMedicalController controller = new SmartMedicalController(model, tes, null);
+        logger.log("Clinic", "Created clinic " + tenantId);
+        return new ClinicContext(tenantId, tes, model, controller);
+    }
+
+    @Override
+    public void close() {
+        for (String tenantId : getTenantIds()) remove(tenantId);
+        insuranceLoaders.shutdown();
+    }
+}
@@ -1,5 +1,9 @@
 package Controller;
 
+import Model.StateLineSink;
+
+import java.io.IOException;
+
 public interface ControllerInterface {
     /**
      * The "activate" method is responsible for (de)activating features.
@@ -34,4 +38,14 @@ public interface ControllerInterface {
      * @return returns a list of String that represents all of the system's current state in text. The order does not matter in the list.
      */
     public String[] getStateAsLog();
+
+    /**
+     * The "writeStateAsLog" method is the streaming variant of "getStateAsLog".
+     * It passes the lines of the current state to "out" one by one instead of returning them all at once.
+     *
+     * @param out receives the lines of the state, in the same order as getStateAsLog.
+     */
+    public default void writeStateAsLog(StateLineSink out) throws IOException {
+        for (String line : getStateAsLog()) out.line(line);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,12 @@
+package Controller;
+
+import Model.Feature;
+
+public interface FeatureHook
+{
+    default void onActivate(Feature feature) {
+    }
+
+    default void onDeactivate(Feature feature) {
+    }
+}
@@ -0,0 +1,58 @@
+package Controller;
+// FeatureLifecycle.java
+
+import Logger.Logger;
+import Model.Feature;
+import Model.FeatureChangeListener;
+import Model.FeatureSnapshot;
+
+import java.util.Arrays;
+
+/**
+ * Calls the hooks registered for a feature when that feature is actually switched on or off.
+ * <p>
+ * The diff between two configurations is a single XOR of their bitmasks, restricted to the
+ * features that have hooks, so a change that touches no hooked feature costs one comparison.
+ * Hooks run on the thread that published the change, after the model has released it.
+ */
+public class FeatureLifecycle implements FeatureChangeListener {
+    private static final FeatureHook[] NO_HOOKS = new FeatureHook[0];
+
+    private final Logger logger = Logger.getInstance();
+    // hooks per feature ordinal, replaced (copy-on-write) on registration
+    private volatile FeatureHook[][] hooks = new FeatureHook[Feature.values().length][];
+    private volatile long hookedMask = 0L;
+
+    public FeatureLifecycle() {
+        Arrays.fill(hooks, NO_HOOKS);
+    }
+
+    public synchronized void register(Feature feature, FeatureHook hook) {
+        FeatureHook[][] copy = hooks.clone();
+        FeatureHook[] forFeature = Arrays.copyOf(copy[feature.ordinal()], copy[feature.ordinal()].length + 1);
+        forFeature[forFeature.length - 1] = hook;
+        copy[feature.ordinal()] = forFeature;
+        hooks = copy;
+        hookedMask |= feature.bit();
+    }
+
+    @Override
+    public void onFeaturesChanged(FeatureSnapshot previous, FeatureSnapshot current) {
+        long changed = (previous.getMask() ^ current.getMask()) & hookedMask;
+        if (changed == 0) return;
+
+        FeatureHook[][] snapshot = hooks;
+        for (long m = changed; m != 0; m &= m - 1) {
+            Feature feature = Feature.fromBit(Long.numberOfTrailingZeros(m));
+            boolean activated = current.isActive(feature);
+            for (FeatureHook hook : snapshot[feature.ordinal()]) {
+                try {
+                    if (activated) hook.onActivate(feature);
+                    else hook.onDeactivate(feature);
+                } catch (Exception e) {
+                    logger.error("Controller", "feature hook error for " + feature.name() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package Controller;
+// FeatureReplay.java
+
+import Model.Feature;
+
+import java.io.IOException;
+
+/**
+ * A paths file compiled into feature bitmask transitions, replayed without resolving any name.
+ * <p>
+ * Every ACTIVATION block of the {@link PathIndex} becomes a pair of masks (see {@link Feature#bit()}),
+ * and the replay program is an int array of block indexes and {@link PathIndex#BREAKPOINT} markers.
+ * As with names, an unknown activated feature is dropped, and an unknown deactivated feature makes
+ * its transition fail: it is compiled to {@link #UNKNOWN_FEATURE}, a bit no feature model knows.
+ */
+public final class FeatureReplay {
+    public static final long UNKNOWN_FEATURE = 1L << 63;
+
+    /**
+     * Called at each BREAKPOINT of the replay.
+     */
+    @FunctionalInterface
+    public interface BreakpointHandler
+    {
+        void onBreakpoint(int step) throws IOException;
+    }
+
+    private final long[] deactivations;
+    private final long[] activations;
+    private final int[] program;
+
+    private FeatureReplay(long[] deactivations, long[] activations, int[] program) {
+        this.deactivations = deactivations;
+        this.activations = activations;
+        this.program = program;
+    }
+
+    public static FeatureReplay compile(PathIndex index) {
+        int blocks = index.getBlockCount();
+        long[] deactivations = new long[blocks];
+        long[] activations = new long[blocks];
+        for (int b = 0; b < blocks; b++) {
+            deactivations[b] = compileNames(index.getDeactivations(b), UNKNOWN_FEATURE);
+            activations[b] = compileNames(index.getActivations(b), 0L);
+        }
+        return new FeatureReplay(deactivations, activations, index.getOperations());
+    }
+
+    private static long compileNames(String[] names, long unknownBit) {
+        long mask = 0L;
+        for (String name : names) {
+            if (name.isEmpty()) continue;
+            Feature f = Feature.byName(name);
+            mask |= f == null ? unknownBit : f.bit();
+        }
+        return mask;
+    }
+
+    public int getTransitionCount() {
+        return deactivations.length;
+    }
+
+    /**
+     * Apply the whole program to the controller, calling the handler at each BREAKPOINT.
+     *
+     * @return the number of transitions that were rejected
+     */
+    public int run(SmartMedicalController controller, BreakpointHandler onBreakpoint) throws IOException {
+        int rejected = 0;
+        int step = 0;
+        for (int operation : program) {
+            if (operation == PathIndex.BREAKPOINT) {
+                onBreakpoint.onBreakpoint(step++);
+            } else if (controller.activateMasks(deactivations[operation], activations[operation]) != 0) {
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+}
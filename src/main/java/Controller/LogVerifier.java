@@ -0,0 +1,303 @@
+package Controller;
+// LogVerifier.java
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the logs of the alternative paths of a test suite without loading them.
+ * <p>
+ * Each log file is read once, in parallel with the others, and every state is reduced to an
+ * order-insensitive 128-bit digest (the sums of two 64-bit hashes over its distinct lines) plus
+ * its line count, and to the byte offset where it starts. This is the rule of the default
+ * TestingToolRunner.compareLogs: same set of lines and same number of lines. The digests of all
+ * paths are then compared step by step, and only the states that differ are read again, from
+ * their offsets, to report them.
+ */
+public final class LogVerifier {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A state of an alternative path that differs from the state of path 0 at the same step.
+     * A missing state (the log of a path is shorter) is an empty array.
+     */
+    public record Discrepancy(int step, int path, String[] firstLog, String[] otherLog) {
+    }
+
+    private final int threads;
+
+    public LogVerifier(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Compare the logs of all paths with the log of path 0.
+     * Like verifyLogs, at most one discrepancy is reported per step: the first path that differs.
+     */
+    public List<Discrepancy> verify(List<Path> logs, TestLogSink.Format format) throws IOException {
+        FileDigest[] digests = digestAll(logs, format);
+        FileDigest first = digests[0];
+        List<Discrepancy> discrepancies = new ArrayList<>();
+
+        for (int step = 0; step < first.states; step++) {
+            for (int j = 1; j < digests.length; j++) {
+                if (first.sameState(step, digests[j])) continue;
+                String[] firstLog = readState(logs.get(0), format, first.offsets[step]);
+                String[] otherLog = step < digests[j].states
+                        ? readState(logs.get(j), format, digests[j].offsets[step]) : new String[0];
+                discrepancies.add(new Discrepancy(step, j, firstLog, otherLog));
+                break;
+            }
+        }
+        return discrepancies;
+    }
+
+    private FileDigest[] digestAll(List<Path> logs, TestLogSink.Format format) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, logs.size())));
+        try {
+            List<Future<FileDigest>> futures = new ArrayList<>(logs.size());
+            for (Path log : logs) futures.add(pool.submit(() -> digest(log, format)));
+            FileDigest[] digests = new FileDigest[logs.size()];
+            for (int i = 0; i < digests.length; i++) digests[i] = futures.get(i).get();
+            return digests;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while hashing logs", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    static FileDigest digest(Path log, TestLogSink.Format format) throws IOException {
+        FileDigest digest = new FileDigest();
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            StateReader reader = format == TestLogSink.Format.TEXT ? new TextReader(channel, 0) : new BinaryReader(channel, 0, true);
+            StateHasher hasher = new StateHasher();
+            long start = reader.position();
+            String line;
+            while ((line = reader.next()) != null) {
+                if (line == StateReader.END) {
+                    hasher.finish(digest, start);
+                    start = reader.position();
+                } else {
+                    hasher.add(line);
+                }
+            }
+        }
+        return digest;
+    }
+
+    static String[] readState(Path log, TestLogSink.Format format, long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            StateReader reader = format == TestLogSink.Format.TEXT ? new TextReader(channel, offset) : new BinaryReader(channel, offset, false);
+            List<String> lines = new ArrayList<>();
+            String line;
+            while ((line = reader.next()) != null && line != StateReader.END) lines.add(line);
+            return lines.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Digests and start offsets of the states of one log, in growable primitive arrays.
+     */
+    static final class FileDigest {
+        int states;
+        long[] lowSums = new long[64];
+        long[] highSums = new long[64];
+        int[] lineCounts = new int[64];
+        long[] offsets = new long[64];
+
+        void add(long low, long high, int lineCount, long offset) {
+            if (states == offsets.length) {
+                int n = states * 2;
+                lowSums = Arrays.copyOf(lowSums, n);
+                highSums = Arrays.copyOf(highSums, n);
+                lineCounts = Arrays.copyOf(lineCounts, n);
+                offsets = Arrays.copyOf(offsets, n);
+            }
+            lowSums[states] = low;
+            highSums[states] = high;
+            lineCounts[states] = lineCount;
+            offsets[states] = offset;
+            states++;
+        }
+
+        boolean sameState(int step, FileDigest other) {
+            return step < other.states
+                    && lowSums[step] == other.lowSums[step]
+                    && highSums[step] == other.highSums[step]
+                    && lineCounts[step] == other.lineCounts[step];
+        }
+    }
+
+    /**
+     * Order-insensitive digest of one state. Duplicate lines count once in the sums (the lines are
+     * compared as sets), but every line counts in the line count.
+     */
+    private static final class StateHasher {
+        private long[] lows = new long[32];
+        private long[] highs = new long[32];
+        private int lines;
+
+        void add(String line) {
+            if (lines == lows.length) {
+                lows = Arrays.copyOf(lows, lines * 2);
+                highs = Arrays.copyOf(highs, lines * 2);
+            }
+            long h1 = 0xcbf29ce484222325L;
+            long h2 = 0x9E3779B97F4A7C15L;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                h1 = (h1 ^ c) * 0x100000001b3L;
+                h2 = mix(h2 + c);
+            }
+            lows[lines] = mix(h1 ^ line.length());
+            highs[lines] = h2;
+            lines++;
+        }
+
+        void finish(FileDigest digest, long offset) {
+            // sort the line hashes so that duplicates are adjacent and added once
+            long[][] pairs = new long[lines][];
+            for (int i = 0; i < lines; i++) pairs[i] = new long[]{lows[i], highs[i]};
+            Arrays.sort(pairs, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+            long low = 0, high = 0;
+            for (int i = 0; i < lines; i++) {
+                if (i > 0 && pairs[i][0] == pairs[i - 1][0] && pairs[i][1] == pairs[i - 1][1]) continue;
+                low += pairs[i][0];
+                high += pairs[i][1];
+            }
+            digest.add(low, high, lines, offset);
+            lines = 0;
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * Reads the lines of the states of a log one by one, tracking the byte offset.
+     */
+    private interface StateReader {
+        // returned (by identity) at the end of each state
+        String END = new String("ENDSTATE");
+
+        /**
+         * @return the next line, END at the end of a state, or null at the end of the file
+         */
+        String next() throws IOException;
+
+        long position();
+    }
+
+    /**
+     * Testing tool format, read as TestingToolRunner.readStatesFromFile does: lines are trimmed,
+     * and the lines between two LINEMARKERs are joined into one.
+     */
+    private static final class TextReader implements StateReader {
+        private final InputStream in;
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private int pos, limit;
+        private long position;
+        private byte[] lineBytes = new byte[256];
+        private final StringBuilder block = new StringBuilder();
+
+        TextReader(FileChannel channel, long offset) throws IOException {
+            channel.position(offset);
+            this.in = Channels.newInputStream(channel);
+            this.position = offset;
+        }
+
+        @Override
+        public String next() throws IOException {
+            String line;
+            while ((line = readLine()) != null) {
+                line = line.trim();
+                if (line.equals("ENDSTATE")) return END;
+                if (line.equals("LINEMARKER")) {
+                    String result = block.toString();
+                    block.setLength(0);
+                    return result;
+                }
+                block.append(line);
+            }
+            return null;
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        private String readLine() throws IOException {
+            int length = 0;
+            while (true) {
+                if (pos == limit) {
+                    limit = in.read(buffer);
+                    pos = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return length == 0 ? null : new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+                    }
+                }
+                byte b = buffer[pos++];
+                position++;
+                if (b == '\n') return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+                if (length == lineBytes.length) lineBytes = Arrays.copyOf(lineBytes, length * 2);
+                lineBytes[length++] = b;
+            }
+        }
+    }
+
+    /**
+     * Length-prefixed format of {@link TestLogSink}.
+     */
+    private static final class BinaryReader implements StateReader {
+        private final ByteBuffer buf;
+
+        BinaryReader(FileChannel channel, long offset, boolean checkHeader) throws IOException {
+            this.buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (checkHeader && (buf.remaining() < 8 || buf.getInt() != TestLogSink.MAGIC || buf.getInt() != TestLogSink.VERSION)) {
+                throw new IOException("not a binary state log");
+            }
+            if (!checkHeader) buf.position(Math.toIntExact(offset));
+        }
+
+        @Override
+        public String next() throws IOException {
+            if (!buf.hasRemaining()) return null;
+            if (buf.remaining() < 4) throw new EOFException("truncated state");
+            int length = buf.getInt();
+            if (length < 0) return END;
+            if (length > buf.remaining()) throw new EOFException("truncated line");
+            byte[] bytes = new byte[length];
+            buf.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public long position() {
+            return buf.position();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package Controller;
+// PathIndex.java
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A paths file of the testing tool, parsed once.
+ * <p>
+ * The file is a header (number of paths, undetectable transition rate) followed by ACTIVATION
+ * blocks (ACTIVATION, names, DEACTIVATION, names) and BREAKPOINTs. The first block sets the
+ * initial state. Block i is kept as two name arrays and the byte offset of its ACTIVATION line,
+ * and step k is the block that follows the k-th BREAKPOINT (step 0: the block after the initial
+ * one), as in TestingToolRunner.activationsAtSpecificStep.
+ */
+public final class PathIndex {
+    private static final String IRREGULAR_PATTERN =
+            "Irregular pattern detected in your test suite, please contact Pierre Martou (teaching assistant).";
+
+    private record CacheKey(long size, long modified) {
+    }
+
+    private record Cached(CacheKey key, PathIndex index) {
+    }
+
+    private static final ConcurrentHashMap<Path, Cached> CACHE = new ConcurrentHashMap<>();
+
+    public static final int BREAKPOINT = -1;
+    private static final int NO_BLOCK = -1;
+
+    private final int numberPaths;
+    private final String undetectables;
+    // ACTIVATION blocks in file order, block 0 being the initial state
+    private final String[][] activations;
+    private final String[][] deactivations;
+    private final long[] blockOffsets;
+    // step k -> block index
+    private final int[] stepBlocks;
+    // replay order: a block index, or BREAKPOINT
+    private final int[] operations;
+
+    private PathIndex(int numberPaths, String undetectables, List<String[]> activations, List<String[]> deactivations,
+                      List<Long> blockOffsets, List<Integer> stepBlocks, List<Integer> operations) {
+        this.numberPaths = numberPaths;
+        this.undetectables = undetectables;
+        this.activations = activations.toArray(new String[0][]);
+        this.deactivations = deactivations.toArray(new String[0][]);
+        this.blockOffsets = blockOffsets.stream().mapToLong(Long::longValue).toArray();
+        this.stepBlocks = stepBlocks.stream().mapToInt(Integer::intValue).toArray();
+        this.operations = operations.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Index of a paths file, parsed on first use and reused until the file changes.
+     */
+    public static PathIndex of(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        CacheKey key = new CacheKey(attributes.size(), attributes.lastModifiedTime().toMillis());
+        Path normalized = file.toAbsolutePath().normalize();
+        Cached cached = CACHE.get(normalized);
+        if (cached != null && cached.key.equals(key)) return cached.index;
+
+        PathIndex index = parse(file);
+        CACHE.put(normalized, new Cached(key, index));
+        return index;
+    }
+
+    public static PathIndex parse(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        List<String> lines = new ArrayList<>();
+        List<Long> offsets = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i == bytes.length || bytes[i] == '\n') {
+                if (i < bytes.length || i > start) {
+                    lines.add(new String(bytes, start, i - start, StandardCharsets.UTF_8).trim());
+                    offsets.add((long) start);
+                }
+                start = i + 1;
+            }
+        }
+        if (lines.size() < 2) throw new IOException(file + ": missing header");
+
+        int numberPaths;
+        try {
+            numberPaths = Integer.parseInt(lines.get(0));
+        } catch (NumberFormatException e) {
+            throw new IOException(file + ": invalid number of paths " + lines.get(0));
+        }
+
+        List<String[]> activations = new ArrayList<>();
+        List<String[]> deactivations = new ArrayList<>();
+        List<Long> blockOffsets = new ArrayList<>();
+        List<Integer> stepBlocks = new ArrayList<>();
+        List<Integer> operations = new ArrayList<>();
+        // true right after the initial block and after each BREAKPOINT: the next block is a step
+        boolean stepPending = false;
+
+        for (int i = 2; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.equals("ACTIVATION")) {
+                if (i + 3 >= lines.size()) throw new IOException(file + ": truncated ACTIVATION block at line " + (i + 1));
+                if (!lines.get(i + 2).equals("DEACTIVATION")) {
+                    System.out.println(IRREGULAR_PATTERN);
+                }
+                int block = activations.size();
+                activations.add(lines.get(i + 1).split("-"));
+                deactivations.add(lines.get(i + 3).split("-"));
+                blockOffsets.add(offsets.get(i));
+                operations.add(block);
+                if (stepPending) stepBlocks.add(block);
+                stepPending = block == 0;
+                i += 3;
+            } else if (line.equals("BREAKPOINT")) {
+                // two BREAKPOINTs in a row: the step has no transition
+                if (stepPending) stepBlocks.add(NO_BLOCK);
+                operations.add(BREAKPOINT);
+                stepPending = true;
+            }
+        }
+        return new PathIndex(numberPaths, lines.get(1), activations, deactivations, blockOffsets, stepBlocks, operations);
+    }
+
+    public int getNumberPaths() {
+        return numberPaths;
+    }
+
+    public String getUndetectables() {
+        return undetectables;
+    }
+
+    public int getBlockCount() {
+        return activations.length;
+    }
+
+    public int getStepCount() {
+        return stepBlocks.length;
+    }
+
+    /**
+     * @return the names of the features activated by a block (block 0 being the initial state)
+     */
+    public String[] getActivations(int block) {
+        return activations[block].clone();
+    }
+
+    public String[] getDeactivations(int block) {
+        return deactivations[block].clone();
+    }
+
+    /**
+     * @return the byte offset of the ACTIVATION line of a block
+     */
+    public long getBlockOffset(int block) {
+        return blockOffsets[block];
+    }
+
+    /**
+     * @return {activations, deactivations} of the transition at a step, or null if there is no such step
+     */
+    public String[][] activationsAtStep(int step) {
+        if (step < 0 || step >= stepBlocks.length || stepBlocks[step] == NO_BLOCK) return null;
+        int block = stepBlocks[step];
+        return new String[][]{activations[block].clone(), deactivations[block].clone()};
+    }
+
+    /**
+     * @return the replay order: block indexes to apply, and {@link #BREAKPOINT} where a state is logged
+     */
+    public int[] getOperations() {
+        return operations.clone();
+    }
+}
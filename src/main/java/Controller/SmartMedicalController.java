@@ -1,37 +1,89 @@
 package Controller;
 // SmartMedicalController.java
 
+import Logger.LogDecoder;
+import Logger.LogIndex;
 import Logger.Logger;
+import Metrics.Counter;
+import Metrics.LatencyHistogram;
+import Metrics.MetricsRegistry;
 import Model.Feature;
+import Model.FeatureModelLoader;
+import Model.InsuranceTier;
 import Model.SmartMedicalModel;
 import Model.Appointment;
 import Model.Notification;
+import Model.StateLineSink;
 import Model.TimeEvent;
 import Model.TimeEventSystem;
+import View.RefreshScheduler;
 import View.SmartMedicalView;
 import java.util.List;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.UUID;
 
 import com.github.weisj.darklaf.theme.Theme;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public class SmartMedicalController implements ControllerInterface {
+    // view refreshes are coalesced into frames of this length
+    private static final long REFRESH_FRAME_MILLIS = 16;
+    private static final long LOG_INDEX_PERIOD_MILLIS = 5000;
+    private static final int LOG_QUERY_LIMIT = 200;
+    private static final Counter COMMANDS = MetricsRegistry.getInstance().counter("controller_commands", "Console commands handled.");
+    private static final Counter UNKNOWN_COMMANDS =
+            MetricsRegistry.getInstance().counter("controller_unknown_commands", "Console commands rejected as unknown or empty.");
+    private static final LatencyHistogram COMMAND_LATENCY =
+            MetricsRegistry.getInstance().histogram("controller_command", "Time to handle a console command.");
+
     private static SmartMedicalController instance;
-    // singleton instances
+    // singleton instances, unless the controller was created with its own context
     private final Logger logger = Logger.getInstance();
-    private final SmartMedicalView view = SmartMedicalView.getInstance();
-    private final SmartMedicalModel model = SmartMedicalModel.getInstance();
-    private final TimeEventSystem tes = TimeEventSystem.getInstance();
+    private final SmartMedicalView view; // null when headless
+    private final SmartMedicalModel model;
+    private final TimeEventSystem tes;
 
-    private boolean isUIViewEnabled = false;
+    private volatile boolean isUIViewEnabled = false;
     private final Map<String, Command> commands = new HashMap<>();
+    private final FeatureLifecycle lifecycle = new FeatureLifecycle();
+    private FeatureModelLoader featureModelLoader;
+    private final RefreshScheduler refresh;
+    private LogIndex logIndex; // created on the first log query
 
     public SmartMedicalController() {
+        this(SmartMedicalModel.getInstance(), TimeEventSystem.getInstance(), SmartMedicalView.getInstance());
+    }
+
+    /**
+     * Create a controller over the given model and time line.
+     *
+     * @param view the view to drive, or null for a headless controller (e.g. replaying test paths)
+     */
+    public SmartMedicalController(SmartMedicalModel model, TimeEventSystem tes, SmartMedicalView view) {
+        this.model = model;
+        this.tes = tes;
+        this.view = view;
+        this.refresh = new RefreshScheduler(model::getCurrentStateLog,
+                view == null ? state -> { } : view::updateDisplay, REFRESH_FRAME_MILLIS);
         initCommands();
+        initFeatureHooks();
+        model.addFeatureListener(lifecycle);
+        // time events change the appointments too, refresh once per frame whatever their number
+        tes.registerListener((event, days) -> {
+            if (isUIViewEnabled) refresh.requestRefresh();
+        });
     }
 
     public static SmartMedicalController getInstance() {
@@ -43,10 +95,19 @@ public class SmartMedicalController implements ControllerInterface {
         return instance;
     }
 
+    /**
+     * Create a headless controller with its own model and time line, sharing no state with the
+     * singletons, so that several of them can be driven in parallel.
+     */
+    public static SmartMedicalController createIsolated() {
+        TimeEventSystem tes = new TimeEventSystem();
+        return new SmartMedicalController(new SmartMedicalModel(tes), tes, null);
+    }
+
     private void initCommands() {
         commands.put("title", args -> {
             String title = args.isEmpty() ? "Application" : args;
-            view.setTitle(title);
+            if (view != null) view.setTitle(title);
             logger.log("Controller", "Title set to: " + title);
         });
 
@@ -121,12 +182,200 @@ public class SmartMedicalController implements ControllerInterface {
         commands.put("clearnotifs", args -> {
             clearNotifications();
         });
+
+        commands.put("pay", args -> {
+            String[] parts = args.trim().split(" ");
+            if (parts.length != 2) {
+                logger.error("Controller", "Usage: pay <patient> <amount>");
+                return;
+            }
+            try {
+                long cents = new BigDecimal(parts[1]).movePointRight(2).longValueExact();
+                recordPayment(parts[0], cents);
+            } catch (ArithmeticException | NumberFormatException e) {
+                logger.error("Controller", "Invalid amount: " + parts[1]);
+            }
+        });
+
+        commands.put("balance", args -> {
+            if (args.isEmpty()) {
+                logger.error("Controller", "Usage: balance <patient>");
+                return;
+            }
+            long cents = getBalance(args.trim());
+            logger.log("Controller", "Balance for " + args.trim() + ": " + BigDecimal.valueOf(cents, 2));
+        });
+
+        commands.put("insurance", args -> {
+            if (args.isEmpty()) {
+                logger.error("Controller", "Usage: insurance <patient>");
+                return;
+            }
+            logger.log("Controller", "Insurance tier for " + args.trim() + ": " + getInsuranceTier(args.trim()));
+        });
+
+        commands.put("history", args -> {
+            String[] parts = args.trim().split(" ");
+            if (parts[0].isEmpty()) {
+                logger.error("Controller", "Usage: history <patient> [limit]");
+                return;
+            }
+            try {
+                int limit = parts.length > 1 ? Integer.parseInt(parts[1]) : 10;
+                Iterator<Appointment> it = patientHistoryIterator(parts[0]);
+                int shown = 0;
+                while (shown < limit && it.hasNext()) {
+                    logger.log("Controller", it.next().toString());
+                    shown++;
+                }
+                logger.log("Controller", "history: " + shown + " entries shown for " + parts[0]);
+            } catch (NumberFormatException nfe) {
+                logger.error("Controller", "Invalid limit: " + parts[1]);
+            }
+        });
+
+        commands.put("loglevel", args -> {
+            if (!args.isBlank() && !logger.applyLevels(args)) {
+                logger.error("Controller", "Usage: loglevel [LEVEL] [<component>=<LEVEL|DEFAULT> ...], levels: DEBUG INFO WARN ERROR OFF");
+                return;
+            }
+            logger.log("Controller", "Log levels: " + logger.describeLevels());
+        });
+
+        commands.put("fingerprint", args -> logger.log("Controller", String.format("State fingerprint: %016x", getStateFingerprint())));
+
+        commands.put("uistats", args -> logger.log("Controller", "View refresh: " + refresh.getStats()));
+
+        commands.put("insurancestats", args -> logger.log("Controller", "Insurance cache: " + model.getInsuranceCache().getStats()));
+
+        commands.put("metrics", args -> {
+            for (String line : MetricsRegistry.getInstance().describe()) logger.log("Metrics", line);
+        });
+
+        commands.put("logs", args -> {
+            String[] parts = args.trim().split("\\s+", 4);
+            long from = parts.length >= 3 ? parseLogTime(parts[1], false) : -1;
+            long to = parts.length >= 3 ? parseLogTime(parts[2], true) : -1;
+            if (from < 0 || to < 0) {
+                logger.error("Controller", "Usage: logs <component|*> <from> <to> [text], times as HH:mm[:ss], yyyy-MM-dd[THH:mm[:ss]] or now");
+                return;
+            }
+            LogIndex index = getLogIndex();
+            if (index == null) {
+                logger.error("Controller", "Not logging to a file.");
+                return;
+            }
+            logger.flush();
+            try {
+                LogIndex.Result result = index.query(parts[0].equals("*") ? null : parts[0], from, to,
+                        parts.length > 3 ? parts[3] : null, LOG_QUERY_LIMIT);
+                // printed, not logged: they would be written to the log again
+                for (LogDecoder.Record record : result.records()) System.out.println(LogDecoder.toText(record));
+                logger.log("Controller", String.format("%d matching records (%d shown), %d of %d log blocks read",
+                        result.matches(), result.records().size(), result.blocksRead(), result.blocks()));
+            } catch (IOException e) {
+                logger.error("Controller", "Log query failed: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Index of the current log file, kept up to date in the background.
+     */
+    private synchronized LogIndex getLogIndex() {
+        Path file = logger.getLogFile();
+        if (file == null) return null;
+        if (logIndex == null || !logIndex.getFile().equals(file)) {
+            if (logIndex != null) logIndex.close();
+            logIndex = new LogIndex(file);
+            logIndex.startBackgroundIndexing(LOG_INDEX_PERIOD_MILLIS);
+        }
+        return logIndex;
+    }
+
+    /**
+     * Parse a time of the logs command: "now", "HH:mm[:ss]" (today), "yyyy-MM-dd" or "yyyy-MM-ddTHH:mm[:ss]".
+     *
+     * @param end true for the end of a range: the last millisecond of the given minute, second or day
+     * @return epoch milliseconds, or -1 if the time is malformed
+     */
+    private static long parseLogTime(String text, boolean end) {
+        try {
+            LocalDateTime start;
+            ChronoUnit unit;
+            if (text.equals("now")) {
+                return System.currentTimeMillis();
+            } else if (!text.contains("-")) {
+                LocalTime time = LocalTime.parse(text);
+                start = LocalDate.now().atTime(time);
+                unit = text.length() > 5 ? ChronoUnit.SECONDS : ChronoUnit.MINUTES;
+            } else if (!text.contains("T")) {
+                start = LocalDate.parse(text).atStartOfDay();
+                unit = ChronoUnit.DAYS;
+            } else {
+                start = LocalDateTime.parse(text);
+                unit = text.length() > 16 ? ChronoUnit.SECONDS : ChronoUnit.MINUTES;
+            }
+            if (end) start = start.plus(1, unit).minusNanos(1_000_000);
+            return start.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private void initFeatureHooks() {
+        lifecycle.register(Feature.DARK_MODE, new FeatureHook() {
+            @Override
+            public void onActivate(Feature feature) {
+                if (isUIViewEnabled && view != null) view.setDarkMode(true);
+            }
+
+            @Override
+            public void onDeactivate(Feature feature) {
+                if (isUIViewEnabled && view != null) view.setDarkMode(false);
+            }
+        });
+    }
+
+    /**
+     * Load the feature model from a features.txt file and reload it whenever the file changes.
+     *
+     * @return true if the file is being watched
+     */
+    public synchronized boolean watchFeatureModel(Path featureModelPath) {
+        if (featureModelLoader != null) featureModelLoader.close();
+        featureModelLoader = new FeatureModelLoader(featureModelPath, model);
+        try {
+            featureModelLoader.start();
+            return true;
+        } catch (IOException e) {
+            logger.error("Controller", "Cannot watch feature model " + featureModelPath + ": " + e.getMessage());
+            featureModelLoader = null;
+            return false;
+        }
+    }
+
+    public synchronized void stopWatchingFeatureModel() {
+        if (featureModelLoader != null) {
+            featureModelLoader.close();
+            featureModelLoader = null;
+        }
+    }
+
+    /**
+     * Register a hook called when the given feature is actually activated or deactivated.
+     */
+    public void registerFeatureHook(Feature feature, FeatureHook hook) {
+        lifecycle.register(feature, hook);
     }
 
     public static void printHelp(Logger logger) {
-        logger.log("System", "UI commands: title <text>, add, remove, activate <feature1...>, deactivate <feature1...>, dark, light");
+        logger.log("System", "UI commands: title <text>, add, remove, activate <feature1...>, deactivate <feature1...>, dark, light, uistats");
         logger.log("System", "TES commands: day, week, event <name>");
-        logger.log("System", "System command: stop");
+        logger.log("System", "Payment commands: pay <patient> <amount>, balance <patient>");
+        logger.log("System", "History commands: history <patient> [limit]");
+        logger.log("System", "Insurance commands: insurance <patient>, insurancestats");
+        logger.log("System", "System commands: loglevel [LEVEL] [<component>=<LEVEL> ...], logs <component|*> <from> <to> [text], metrics, fingerprint, stop");
         logger.log("System", "Features available:");
         for (Feature f : Feature.values()) {
             logger.log("System", "Feature: " + f.name());
@@ -138,23 +387,16 @@ public class SmartMedicalController implements ControllerInterface {
      */
     @Override
     public int activate(String[] deactivations, String[] activations) {
-        logger.log("Controller", "Attempting feature change...\n  Deactivate: " + Arrays.toString(deactivations) + "\n  Activate: " + Arrays.toString(activations));
+        logger.log("Controller", "Attempting feature change...\n  Deactivate: {}\n  Activate: {}", deactivations, activations);
 
+        long versionBefore = model.getFeatureSnapshot().getVersion();
+        // feature hooks (e.g. DARK_MODE) are called by the lifecycle for the features that changed
         boolean success = model.applyFeatureChange(deactivations, activations);
         if (success) {
-            if (isUIViewEnabled) {
-                for (String name : activations) {
-                    //if (name.equals("DYNAMIC_BUTTON")) view.toggleDynamicButton(true);
-                    if (name.equals("DARK_MODE")) view.setDarkMode(true);
-                }
-                for (String name : deactivations) {
-                    //if (name.equals("DYNAMIC_BUTTON")) view.toggleDynamicButton(false);
-                    if (name.equals("DARK_MODE")) view.setDarkMode(false);
-                }
-
-                view.updateDisplay(model.getCurrentStateLog());
+            if (isUIViewEnabled && model.getFeatureSnapshot().getVersion() != versionBefore) {
+                refresh.requestRefresh();
             }
-            logger.log("Controller", "Feature change successful, activated : " + Arrays.toString(activations) + ", deactivated: " + Arrays.toString(deactivations));
+            logger.log("Controller", "Feature change successful, activated : {}, deactivated: {}", activations, deactivations);
             return 0;
         } else {
             logger.error("Controller", "Feature activation FAILED.");
@@ -162,12 +404,31 @@ public class SmartMedicalController implements ControllerInterface {
         }
     }
 
+    /**
+     * Low-overhead variant of {@link #activate(String[], String[])} taking precompiled bitmasks
+     * (see {@link FeatureReplay}); nothing is logged unless the change is rejected.
+     *
+     * @return: 0 if successful, 2 if constraint violation/other error.
+     */
+    public int activateMasks(long deactivations, long activations) {
+        long versionBefore = model.getFeatureSnapshot().getVersion();
+        if (!model.applyFeatureMasks(deactivations, activations)) return 2;
+        if (isUIViewEnabled && model.getFeatureSnapshot().getVersion() != versionBefore) {
+            refresh.requestRefresh();
+        }
+        return 0;
+    }
+
     @Override
     public boolean enableUIView() {
         if (isUIViewEnabled) {
             logger.log("Controller", "UI View is already enabled.");
             return true;
         }
+        if (view == null) {
+            logger.error("Controller", "No UI View for a headless controller.");
+            return false;
+        }
         isUIViewEnabled = true;
         view.show();
         logger.log("Controller", "UI View enabled.");
@@ -186,15 +447,28 @@ public class SmartMedicalController implements ControllerInterface {
         return true;
     }
 
+    /**
+     * Fingerprint of the current state: two equal states (same features and appointments) have
+     * the same fingerprint, so states can be compared without rendering them with getStateAsLog.
+     */
+    public long getStateFingerprint() {
+        return model.getStateFingerprint();
+    }
+
     @Override
     public String[] getStateAsLog() {
         return model.getCurrentStateLog();
     }
 
+    @Override
+    public void writeStateAsLog(StateLineSink out) throws IOException {
+        model.writeStateLog(out);
+    }
+
     public boolean addAppointmentDirect(String patient, String staff, LocalDate day) {
         try {
             model.addAppointment(patient, staff, day);
-            if (isUIViewEnabled) view.updateDisplay(model.getCurrentStateLog());
+            if (isUIViewEnabled) refresh.requestRefresh();
             logger.log("Controller", "Directly added appointment for " + patient + " on day " + day);
             return true;
         } catch (Exception e) {
@@ -209,7 +483,7 @@ public class SmartMedicalController implements ControllerInterface {
     public Appointment addAppointment(LocalDate date, String patient, String staff) {
         try {
             Appointment appointment = model.addAppointment(patient, staff, date);
-            if (isUIViewEnabled) view.updateDisplay(model.getCurrentStateLog());
+            if (isUIViewEnabled) refresh.requestRefresh();
             logger.log("Controller", "Added appointment: " + appointment.toString());
             return appointment;
         } catch (Exception e) {
@@ -223,7 +497,8 @@ public class SmartMedicalController implements ControllerInterface {
      */
     public List<Appointment> getFutureAppointments() {
         java.util.List<Appointment> list = model.getFutureAppointments();
-        logger.log("Controller", "getFutureAppointments: returning " + list.size() + " appointments");
+        // guarded so that a disabled statement does not box the size
+        if (logger.isEnabled("Controller", Logger.Level.INFO)) logger.log("Controller", "getFutureAppointments: returning {} appointments", list.size());
         return list;
     }
 
@@ -232,22 +507,36 @@ public class SmartMedicalController implements ControllerInterface {
      */
     public java.util.List<Appointment> getPastAppointments() {
         java.util.List<Appointment> list = model.getPastAppointments();
-        logger.log("Controller", "getPastAppointments: returning " + list.size() + " appointments");
+        if (logger.isEnabled("Controller", Logger.Level.INFO)) logger.log("Controller", "getPastAppointments: returning {} appointments", list.size());
         return list;
     }
 
+    /**
+     * Lazily iterate over one patient's past appointments, newest first.
+     */
+    public Iterator<Appointment> patientHistoryIterator(String patient) {
+        return model.patientHistoryIterator(patient);
+    }
+
+    /**
+     * Stream one patient's past appointments, newest first, without materializing the history.
+     */
+    public Stream<Appointment> streamPatientHistory(String patient) {
+        return model.streamPatientHistory(patient);
+    }
+
     /**
      * Notifications API
      */
     public java.util.List<Notification> getNotifications() {
         java.util.List<Notification> list = model.getNotifications();
-        logger.log("Controller", "getNotifications: returning " + list.size() + " notifications");
+        if (logger.isEnabled("Controller", Logger.Level.INFO)) logger.log("Controller", "getNotifications: returning {} notifications", list.size());
         return list;
     }
 
     public java.util.List<Notification> getUnreadNotifications() {
         java.util.List<Notification> list = model.getUnreadNotifications();
-        logger.log("Controller", "getUnreadNotifications: returning " + list.size() + " notifications");
+        if (logger.isEnabled("Controller", Logger.Level.INFO)) logger.log("Controller", "getUnreadNotifications: returning {} notifications", list.size());
         return list;
     }
 
@@ -255,7 +544,7 @@ public class SmartMedicalController implements ControllerInterface {
         logger.log("Controller", "markNotificationRead requested: " + id);
         boolean res = model.markNotificationRead(id);
         if (res) {
-            if (isUIViewEnabled) view.updateDisplay(model.getCurrentStateLog());
+            if (isUIViewEnabled) refresh.requestRefresh();
             logger.log("Controller", "Marked notification read: " + id);
         }
         return res;
@@ -263,7 +552,7 @@ public class SmartMedicalController implements ControllerInterface {
 
     public void clearNotifications() {
         model.clearNotifications();
-        if (isUIViewEnabled) view.updateDisplay(model.getCurrentStateLog());
+        if (isUIViewEnabled) refresh.requestRefresh();
     }
 
     /**
@@ -273,7 +562,7 @@ public class SmartMedicalController implements ControllerInterface {
         logger.log("Controller", "cancelAppointmentById requested: " + id);
         boolean res = model.cancelAppointmentById(id);
         if (res) {
-            if (isUIViewEnabled) view.updateDisplay(model.getCurrentStateLog());
+            if (isUIViewEnabled) refresh.requestRefresh();
             logger.log("Controller", "Cancelled appointment id: " + id);
         } else {
             logger.error("Controller", "Failed to cancel appointment id: " + id);
@@ -290,7 +579,7 @@ public class SmartMedicalController implements ControllerInterface {
         logger.log("Controller", "rescheduleAppointment requested: " + id + " -> " + newDate);
         boolean res = model.rescheduleAppointmentById(id, newDate);
         if (res) {
-            if (isUIViewEnabled) view.updateDisplay(model.getCurrentStateLog());
+            if (isUIViewEnabled) refresh.requestRefresh();
             logger.log("Controller", "Rescheduled appointment id " + id + " -> " + newDate);
         } else {
             logger.error("Controller", "Failed to reschedule appointment id: " + id);
@@ -298,14 +587,37 @@ public class SmartMedicalController implements ControllerInterface {
         return res;
     }
 
+    /**
+     * Payments API
+     */
+    public boolean recordPayment(String patient, long amountCents) {
+        boolean res = model.recordPayment(patient, amountCents);
+        if (res) {
+            logger.log("Controller", "Recorded payment of " + amountCents + " cents for " + patient);
+        } else {
+            logger.error("Controller", "Failed to record payment of " + amountCents + " cents for " + patient);
+        }
+        return res;
+    }
+
+    public long getBalance(String patient) {
+        return model.getBalance(patient);
+    }
+
+    public InsuranceTier getInsuranceTier(String patient) {
+        return model.getInsuranceTier(patient);
+    }
+
     /**
      * Handles command line input and delegates logic to the activate method or the view.
      */
     public void handleCommand(String commandLine) {
         if (commandLine == null || commandLine.trim().isEmpty()) {
+            UNKNOWN_COMMANDS.increment();
             logger.error("Controller", "Empty command received.");
             return;
         }
+        long start = System.nanoTime();
 
         String[] cutLine = commandLine.split(" ", 2);
         String command = cutLine[0];
@@ -314,8 +626,11 @@ public class SmartMedicalController implements ControllerInterface {
         Command handler = commands.get(command);
         if (handler != null) {
             handler.execute(arguments);
+            COMMANDS.increment();
+            COMMAND_LATENCY.recordSince(start);
         }
         else {
+            UNKNOWN_COMMANDS.increment();
             logger.error("Controller", "Unknown command " + command);
         }
     }
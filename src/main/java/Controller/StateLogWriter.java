@@ -0,0 +1,156 @@
+package Controller;
+// StateLogWriter.java
+
+import Model.StateLineSink;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes system states in the testing tool log format (each line followed by LINEMARKER, each
+ * state terminated by ENDSTATE) while the controller streams them, either to a channel through
+ * one reusable byte buffer, or to an {@link Appendable}.
+ * <p>
+ * Memory use does not depend on the size of the state. A state containing a reserved keyword is
+ * dropped, as in TestingToolRunner.writeStateToFile: whatever was already written of it is
+ * discarded from the buffer, or truncated away when the channel is seekable.
+ */
+public final class StateLogWriter implements StateLineSink, Flushable {
+    public static final String LINEMARKER = "LINEMARKER";
+    public static final String ENDSTATE = "ENDSTATE";
+
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final Appendable appendable;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private CharBuffer chars = CharBuffer.allocate(256);
+
+    // start of the current state, to drop it if it contains a reserved keyword
+    private int stateStartInBuffer;
+    private long stateStartPosition;
+    private boolean flushedInState;
+    private boolean rejected;
+
+    public StateLogWriter(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public StateLogWriter(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.appendable = null;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    public StateLogWriter(Appendable appendable) {
+        this.channel = null;
+        this.appendable = appendable;
+        this.buffer = null;
+    }
+
+    /**
+     * Write the current state of the controller.
+     *
+     * @return false if the state contained a reserved keyword and was not written
+     */
+    public boolean writeState(ControllerInterface controller) throws IOException {
+        beginState();
+        controller.writeStateAsLog(this);
+        return endState();
+    }
+
+    public void beginState() throws IOException {
+        rejected = false;
+        flushedInState = false;
+        if (buffer != null) {
+            stateStartInBuffer = buffer.position();
+            stateStartPosition = channel instanceof SeekableByteChannel sc ? sc.position() + stateStartInBuffer : -1;
+        }
+    }
+
+    @Override
+    public void line(String line) throws IOException {
+        if (rejected) return;
+        if (line.contains(ENDSTATE) || line.contains(LINEMARKER)) {
+            System.out.println("Error: The logs cannot contain reserved keywords (ENDSTATE or LINEMARKER), in : " + line);
+            rejected = true;
+            return;
+        }
+        write(line);
+        write("\n" + LINEMARKER + "\n");
+    }
+
+    /**
+     * @return false if the state was dropped because of a reserved keyword
+     */
+    public boolean endState() throws IOException {
+        if (rejected) {
+            discardState();
+            return false;
+        }
+        write(ENDSTATE + "\n");
+        return true;
+    }
+
+    private void discardState() throws IOException {
+        if (buffer == null) {
+            throw new IOException("state with a reserved keyword was partially written to the Appendable");
+        }
+        if (!flushedInState) {
+            buffer.position(stateStartInBuffer);
+        } else if (channel instanceof SeekableByteChannel sc && stateStartPosition >= 0) {
+            buffer.clear();
+            sc.truncate(stateStartPosition);
+        } else {
+            buffer.clear();
+            throw new IOException("state with a reserved keyword was partially written to the channel");
+        }
+    }
+
+    private void write(String s) throws IOException {
+        if (appendable != null) {
+            appendable.append(s);
+            return;
+        }
+        if (chars.capacity() < s.length()) chars = CharBuffer.allocate(Math.max(s.length(), chars.capacity() * 2));
+        chars.clear();
+        s.getChars(0, s.length(), chars.array(), 0);
+        chars.limit(s.length());
+
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                drain();
+                continue;
+            }
+            if (result.isError()) result.throwException();
+            break;
+        }
+        while (encoder.flush(buffer).isOverflow()) drain();
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+        flushedInState = true;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (buffer != null) {
+            if (buffer.position() > 0) drain();
+        } else if (appendable instanceof Flushable f) {
+            f.flush();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package Controller;
+// TestLogSink.java
+
+import Model.StateLineSink;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Log file of one test path, kept open for the whole run: the file is truncated once when the
+ * sink is opened, and every state goes through the same buffered channel.
+ * <p>
+ * {@link Format#TEXT} is the testing tool format written by TestingToolRunner.writeStateToFile.
+ * {@link Format#BINARY} is a compact length-prefixed encoding: a header (MAGIC, VERSION), then for
+ * each state its lines as (int byte length, UTF-8 bytes) followed by END_OF_STATE. Lines need no
+ * markers, so no keyword is reserved in that format. Read it back with {@link #readBinaryStates(Path)}.
+ */
+public final class TestLogSink implements Closeable {
+    public enum Format {TEXT, BINARY}
+
+    public static final int MAGIC = 0x534D4C47; // "SMLG"
+    public static final int VERSION = 1;
+    private static final int END_OF_STATE = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final StateLogWriter textWriter;
+    private final BinaryWriter binaryWriter;
+    private int states;
+
+    public TestLogSink(Path file, Format format) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (format == Format.TEXT) {
+            this.textWriter = new StateLogWriter(channel, BUFFER_SIZE);
+            this.binaryWriter = null;
+        } else {
+            this.textWriter = null;
+            this.binaryWriter = new BinaryWriter();
+            binaryWriter.putInt(MAGIC);
+            binaryWriter.putInt(VERSION);
+        }
+    }
+
+    /**
+     * Log file name used for a path, e.g. "logs0-3.txt" or "logs0-3.bin".
+     */
+    public static String fileName(int reference, int pathNumber, Format format) {
+        return "logs" + reference + "-" + pathNumber + (format == Format.TEXT ? ".txt" : ".bin");
+    }
+
+    /**
+     * Append the current state of the controller.
+     *
+     * @return false if the state was dropped (text format only, reserved keyword)
+     */
+    public boolean writeState(ControllerInterface controller) throws IOException {
+        boolean written;
+        if (textWriter != null) {
+            written = textWriter.writeState(controller);
+        } else {
+            controller.writeStateAsLog(binaryWriter);
+            binaryWriter.putInt(END_OF_STATE);
+            written = true;
+        }
+        if (written) states++;
+        return written;
+    }
+
+    public int getStateCount() {
+        return states;
+    }
+
+    public void flush() throws IOException {
+        if (textWriter != null) textWriter.flush();
+        else binaryWriter.drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Read all states of a log written in the binary format.
+     */
+    public static List<String[]> readBinaryStates(Path file) throws IOException {
+        List<String[]> states = new ArrayList<>();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buf = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            if (buf.remaining() < 8 || buf.getInt() != MAGIC) throw new IOException(file + " is not a binary state log");
+            int version = buf.getInt();
+            if (version != VERSION) throw new IOException(file + ": unsupported binary log version " + version);
+
+            List<String> current = new ArrayList<>();
+            while (buf.hasRemaining()) {
+                if (buf.remaining() < 4) throw new EOFException(file + ": truncated state");
+                int length = buf.getInt();
+                if (length == END_OF_STATE) {
+                    states.add(current.toArray(new String[0]));
+                    current.clear();
+                    continue;
+                }
+                if (length < 0 || length > buf.remaining()) throw new EOFException(file + ": truncated line");
+                byte[] bytes = new byte[length];
+                buf.get(bytes);
+                current.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            if (!current.isEmpty()) throw new EOFException(file + ": last state is not terminated");
+        }
+        return states;
+    }
+
+    /**
+     * Length-prefixed encoding through one reusable buffer; a line larger than the buffer is written directly.
+     */
+    private final class BinaryWriter implements StateLineSink {
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        @Override
+        public void line(String line) throws IOException {
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            if (bytes.length > buffer.remaining()) {
+                drain();
+                if (bytes.length > buffer.capacity()) {
+                    ByteBuffer large = ByteBuffer.wrap(bytes);
+                    while (large.hasRemaining()) channel.write(large);
+                    return;
+                }
+            }
+            buffer.put(bytes);
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) drain();
+            buffer.putInt(value);
+        }
+
+        void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package Logger;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous log output: callers push records into a bounded lock-free ring buffer and a single
+ * background thread encodes them ({@link LogEncoder}) and writes them to the log file in batches.
+ * <p>
+ * The ring buffer is a multi-producer single-consumer array of preallocated slots, each with a
+ * sequence number telling whether it is free for the producer of a given position or holds a
+ * record for the consumer. Producers claim positions with a CAS on the tail, the consumer
+ * releases slots without any CAS. When the buffer is full, the {@link OverflowPolicy} decides.
+ */
+public final class AsyncLogWriter implements AutoCloseable {
+    public enum OverflowPolicy {
+        /** Wait until the consumer frees a slot. */
+        BLOCK,
+        /** Discard the record and count it. */
+        DROP,
+        /** Format and write the record on the caller's thread. */
+        CALLER_RUNS
+    }
+
+    private static final int BATCH_BYTES = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final OverflowPolicy policy;
+    private final RollingFileOutput output;
+    private volatile boolean console;
+    private final PrintStream out = System.out;
+    private final PrintStream err = System.err;
+
+    // ring buffer
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] times;
+    private final String[] components;
+    private final String[] messages;
+    private final Logger.Level[] levels;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head; // written by the consumer only
+
+    private final Thread consumer;
+    private volatile boolean consumerParked;
+    private volatile boolean closed;
+    private boolean outputClosed; // guarded by writeLock
+
+    // consumer-side buffers; also used by CALLER_RUNS under the lock
+    private final Object writeLock = new Object();
+    private final LogEncoder encoder;
+    private final LogEncoder.Buffer batch = new LogEncoder.Buffer(BATCH_BYTES + 4096);
+    private int batchRecords;
+    private final LogEncoder.Buffer prologue = new LogEncoder.Buffer(256);
+    private final LogEncoder.SecondCache consoleSeconds = new LogEncoder.SecondCache();
+    private final StringBuilder consoleOut = new StringBuilder();
+    private final StringBuilder consoleErr = new StringBuilder();
+
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    /**
+     * @param output   log file, appended to
+     * @param encoder  format of the records in the file
+     * @param capacity number of records the ring buffer holds, rounded up to a power of two
+     * @param console  also print the records to the console (from the background thread)
+     */
+    public AsyncLogWriter(RollingFileOutput output, LogEncoder encoder, int capacity, OverflowPolicy policy, boolean console) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) sequences.set(i, i);
+        this.times = new long[size];
+        this.components = new String[size];
+        this.messages = new String[size];
+        this.levels = new Logger.Level[size];
+        this.policy = policy;
+        this.console = console;
+        this.output = output;
+        this.encoder = encoder;
+        // called from writeBytes, under writeLock
+        output.setPrologue(() -> {
+            prologue.clear();
+            encoder.prologue(prologue);
+            return ByteBuffer.wrap(prologue.array(), 0, prologue.length());
+        });
+
+        this.consumer = new Thread(this::consume, "async-logger");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Queue a record. Never blocks unless the buffer is full and the policy is BLOCK.
+     *
+     * @return false if the record was dropped
+     */
+    public boolean submit(Logger.Level level, String component, String message) {
+        long now = System.currentTimeMillis();
+        if (closed) {
+            writeDirect(now, level, component, message);
+            return true;
+        }
+        while (!offer(now, level, component, message)) {
+            switch (policy) {
+                case DROP -> {
+                    dropped.increment();
+                    return false;
+                }
+                case CALLER_RUNS -> {
+                    callerRuns.increment();
+                    writeDirect(now, level, component, message);
+                    return true;
+                }
+                default -> {
+                    wakeConsumer();
+                    LockSupport.parkNanos(10_000);
+                    if (closed) {
+                        writeDirect(now, level, component, message);
+                        return true;
+                    }
+                }
+            }
+        }
+        // published after the final drain of close(): nobody else will take it out of the ring
+        if (closed) drainBatch();
+        else if (consumerParked) wakeConsumer();
+        return true;
+    }
+
+    private boolean offer(long time, Logger.Level level, String component, String message) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    times[index] = time;
+                    components[index] = component;
+                    messages[index] = message;
+                    levels[index] = level;
+                    // publishes the fields above to the consumer
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false; // full: the slot still holds a record of the previous lap
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    private void wakeConsumer() {
+        LockSupport.unpark(consumer);
+    }
+
+    private void consume() {
+        while (true) {
+            boolean stopping = closed;
+            int drained = drainBatch();
+            if (drained == 0) {
+                if (stopping) return;
+                consumerParked = true;
+                // re-check after announcing the park, a producer may have missed the flag
+                if (sequences.get((int) (head & mask)) != head + 1) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                consumerParked = false;
+            }
+        }
+    }
+
+    /**
+     * Format and write every record available now, in one batch.
+     *
+     * @return the number of records written
+     */
+    private int drainBatch() {
+        int count = 0;
+        synchronized (writeLock) {
+            long h = head;
+            while (true) {
+                int index = (int) (h & mask);
+                if (sequences.get(index) != h + 1) break;
+                append(times[index], levels[index], components[index], messages[index]);
+                components[index] = null;
+                messages[index] = null;
+                // the slot is free for the producer of the next lap
+                sequences.lazySet(index, h + mask + 1);
+                h++;
+                count++;
+            }
+            if (count > 0) {
+                head = h;
+                flushBatch();
+                batches.increment();
+            }
+        }
+        return count;
+    }
+
+    private void writeDirect(long time, Logger.Level level, String component, String message) {
+        synchronized (writeLock) {
+            append(time, level, component, message);
+            flushBatch();
+        }
+    }
+
+    // callers hold writeLock
+    private void append(long time, Logger.Level level, String component, String message) {
+        if (console) {
+            (level.toStderr() ? consoleErr : consoleOut).append('[').append(consoleSeconds.format(time)).append("] [")
+                    .append(component).append("] ").append(level.prefix()).append(message).append('\n');
+        }
+        encoder.encode(time, level, component, message, batch);
+        batchRecords++;
+        // writes end on record boundaries, so that a rolled file never ends in the middle of a record
+        if (batch.length() >= BATCH_BYTES) writeBytes();
+    }
+
+    private void flushBatch() {
+        writeBytes();
+        if (consoleOut.length() > 0) {
+            out.print(consoleOut);
+            out.flush();
+            consoleOut.setLength(0);
+        }
+        if (consoleErr.length() > 0) {
+            err.print(consoleErr);
+            err.flush();
+            consoleErr.setLength(0);
+        }
+    }
+
+    private void writeBytes() {
+        if (batch.length() == 0) return;
+        try {
+            // records racing with close() still reach the console, but not the file
+            if (outputClosed) {
+                dropped.add(batchRecords);
+                return;
+            }
+            output.write(ByteBuffer.wrap(batch.array(), 0, batch.length()));
+            written.add(batchRecords);
+        } catch (IOException e) {
+            dropped.add(batchRecords);
+            System.err.println("Async logger failed to write: " + e.getMessage());
+        } finally {
+            batch.clear();
+            batchRecords = 0;
+            encoder.startChunk();
+        }
+    }
+
+    /**
+     * Wait until every record queued before this call has been written.
+     */
+    public void flush() {
+        long target = tail.get();
+        while (head < target && consumer.isAlive()) {
+            wakeConsumer();
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    /**
+     * Write the remaining records and close the file. Records submitted afterwards are only printed
+     * to the console (when enabled) and counted as dropped.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        wakeConsumer();
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainBatch();
+        synchronized (writeLock) {
+            try {
+                outputClosed = true;
+                output.force();
+                output.close();
+            } catch (IOException e) {
+                System.err.println("Async logger failed to close: " + e.getMessage());
+            }
+        }
+    }
+
+    public Path getFile() {
+        return output.getFile();
+    }
+
+    public void setConsole(boolean console) {
+        this.console = console;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public String getStats() {
+        return String.format("written=%d, batches=%d, dropped=%d, callerRuns=%d, queued=%d, policy=%s; %s",
+                written.sum(), batches.sum(), dropped.sum(), callerRuns.sum(), tail.get() - head, policy, output.getStats());
+    }
+}
@@ -0,0 +1,457 @@
+package Logger;
+
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads log files written with any {@link LogEncoder.Format}, gzipped archives included.
+ * The format is detected from the first byte of the file.
+ * <p>
+ * From the command line, prints the records as text lines:
+ * <pre>java Logger.LogDecoder app.bin app.bin.20240131-120000.gz</pre>
+ */
+public final class LogDecoder {
+    public record Record(long time, Logger.Level level, String component, String message) {
+    }
+
+    /**
+     * Receives the records of a file in order.
+     */
+    public interface RecordHandler
+    {
+        void record(Record record) throws IOException;
+    }
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter JSON_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private LogDecoder() {
+    }
+
+    /**
+     * A record in the text format, e.g. "[2024-01-31 12:00:00] [TES] WARN: message".
+     */
+    public static String toText(Record record) {
+        String time = TIME_FORMAT.format(Instant.ofEpochMilli(record.time()).atZone(ZoneId.systemDefault()));
+        return "[" + time + "] [" + record.component() + "] " + record.level().prefix() + record.message();
+    }
+
+    /**
+     * Open a log file, decompressing it if it is a gzipped archive.
+     */
+    static InputStream open(Path file) throws IOException {
+        InputStream raw = Files.newInputStream(file);
+        try {
+            return file.toString().endsWith(".gz") ? new GZIPInputStream(raw, 64 * 1024) : raw;
+        } catch (IOException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+    public static void read(Path file, RecordHandler handler) throws IOException {
+        try (InputStream in = open(file)) {
+            Cursor cursor = new Cursor(in, 0, null, List.of(), 0, true);
+            Record record;
+            while ((record = cursor.next()) != null) handler.record(record);
+        } catch (NoSuchFileException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    public static List<Record> readAll(Path file) throws IOException {
+        List<Record> records = new ArrayList<>();
+        read(file, records::add);
+        return records;
+    }
+
+    /**
+     * Reads the records of a log one by one from any offset where a record starts, keeping track of
+     * byte offsets. A record that is not completely written yet (at the end of a file being
+     * appended to) ends the reading, so {@link #nextStart()} is where to resume once it is.
+     * <p>
+     * A binary log cannot be read from the middle without the component dictionary and time base in
+     * effect there, so they are given to the constructor.
+     */
+    static final class Cursor {
+        private final InputStream in;
+        private final byte[] buffer = new byte[64 * 1024];
+        private int pos, limit;
+        private long position;
+        private LogEncoder.Format format;
+        private final boolean strict;
+
+        private long recordStart;
+        private long nextStart;
+
+        // binary state
+        private final List<String> components;
+        private long second;
+        private int dictionaryVersion;
+
+        // text: the record line read after the current record's continuation lines
+        private byte[] lineBytes = new byte[256];
+        private long lineStart;
+        private Record lookahead;
+        private long lookaheadStart;
+
+        /**
+         * @param format     null to detect it from the first byte
+         * @param components binary component dictionary at this offset
+         * @param second     binary time base at this offset
+         * @param strict     fail on lines that are not records instead of skipping them
+         */
+        Cursor(InputStream in, long position, LogEncoder.Format format, List<String> components, long second, boolean strict) {
+            this.in = in;
+            this.position = position;
+            this.nextStart = position;
+            this.format = format;
+            this.components = new ArrayList<>(components);
+            this.second = second;
+            this.strict = strict;
+        }
+
+        /**
+         * @return the next record, or null at the end of the complete records
+         */
+        Record next() throws IOException {
+            if (format == null) {
+                int first = peek();
+                if (first < 0) return null;
+                format = first == LogEncoder.HEADER ? LogEncoder.Format.BINARY : first == '{' ? LogEncoder.Format.JSON : LogEncoder.Format.TEXT;
+            }
+            return switch (format) {
+                case TEXT -> nextText();
+                case JSON -> nextJson();
+                case BINARY -> nextBinary();
+            };
+        }
+
+        LogEncoder.Format format() {
+            return format;
+        }
+
+        /**
+         * @return the offset of the record last returned
+         */
+        long recordStart() {
+            return recordStart;
+        }
+
+        /**
+         * @return the offset of the first record not returned yet
+         */
+        long nextStart() {
+            return nextStart;
+        }
+
+        List<String> components() {
+            return components;
+        }
+
+        /**
+         * @return a number that changes whenever the binary component dictionary does
+         */
+        int dictionaryVersion() {
+            return dictionaryVersion;
+        }
+
+        long second() {
+            return second;
+        }
+
+        private Record nextText() throws IOException {
+            if (lookahead == null) {
+                String line;
+                while ((line = readLine()) != null) {
+                    lookahead = parseText(line);
+                    if (lookahead != null) {
+                        lookaheadStart = lineStart;
+                        break;
+                    }
+                    if (strict) throw new IOException("malformed log line at byte " + lineStart);
+                }
+                if (lookahead == null) return null;
+            }
+            Record current = lookahead;
+            recordStart = lookaheadStart;
+            lookahead = null;
+            StringBuilder message = null;
+            String line;
+            while ((line = readLine()) != null) {
+                Record record = parseText(line);
+                if (record != null) {
+                    lookahead = record;
+                    lookaheadStart = lineStart;
+                    break;
+                }
+                // a message spanning several lines
+                if (message == null) message = new StringBuilder(current.message());
+                message.append('\n').append(line);
+            }
+            nextStart = lookahead != null ? lookaheadStart : position;
+            return message == null ? current : new Record(current.time(), current.level(), current.component(), message.toString());
+        }
+
+        private Record nextJson() throws IOException {
+            String line;
+            while ((line = readLine()) != null) {
+                nextStart = position;
+                if (line.isEmpty()) continue;
+                Record record = parseJson(line);
+                if (record != null) {
+                    recordStart = lineStart;
+                    return record;
+                }
+                if (strict) throw new IOException("malformed log line at byte " + lineStart);
+            }
+            return null;
+        }
+
+        private Record nextBinary() throws IOException {
+            Logger.Level[] levels = Logger.Level.values();
+            while (true) {
+                long start = position;
+                int tag = read();
+                if (tag < 0) return null;
+                try {
+                    switch (tag) {
+                        case LogEncoder.HEADER -> {
+                            int magic = (int) readBytes(4);
+                            int version = read();
+                            if (magic != LogEncoder.MAGIC) throw new IOException("not a binary log at byte " + start);
+                            if (version < 0) throw new EOFException();
+                            if (version != LogEncoder.VERSION) throw new IOException("unsupported binary log version " + version);
+                            // a new writer: its ids start over
+                            components.clear();
+                            dictionaryVersion++;
+                        }
+                        case LogEncoder.COMPONENT -> {
+                            int id = (int) readVarLong();
+                            String name = readString();
+                            while (components.size() <= id) components.add(null);
+                            components.set(id, name);
+                            dictionaryVersion++;
+                        }
+                        case LogEncoder.SECOND -> second = readVarLong();
+                        default -> {
+                            int level = tag - LogEncoder.EVENT;
+                            if (level < 0 || level >= levels.length) throw new IOException("unknown record type " + tag + " at byte " + start);
+                            int id = (int) readVarLong();
+                            long millis = readVarLong();
+                            String message = readString();
+                            if (id >= components.size() || components.get(id) == null) {
+                                throw new IOException("undefined component id " + id + " at byte " + start);
+                            }
+                            recordStart = start;
+                            nextStart = position;
+                            return new Record(second * 1000 + millis, levels[level], components.get(id), message);
+                        }
+                    }
+                    nextStart = position;
+                } catch (EOFException e) {
+                    // record not completely written yet
+                    return null;
+                }
+            }
+        }
+
+        private int peek() throws IOException {
+            if (pos == limit && !fill()) return -1;
+            return buffer[pos] & 0xFF;
+        }
+
+        private int read() throws IOException {
+            if (pos == limit && !fill()) return -1;
+            position++;
+            return buffer[pos++] & 0xFF;
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(buffer);
+            if (n <= 0) return false;
+            pos = 0;
+            limit = n;
+            return true;
+        }
+
+        private long readBytes(int count) throws IOException {
+            long value = 0;
+            for (int i = 0; i < count; i++) {
+                int b = read();
+                if (b < 0) throw new EOFException();
+                value = value << 8 | b;
+            }
+            return value;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                if (b < 0) throw new EOFException();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("malformed varint at byte " + position);
+        }
+
+        private String readString() throws IOException {
+            int length = (int) readVarLong();
+            if (lineBytes.length < length) lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+            for (int i = 0; i < length; i++) {
+                int b = read();
+                if (b < 0) throw new EOFException();
+                lineBytes[i] = (byte) b;
+            }
+            return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @return the next complete line, or null if there is none (a last line without its newline is not complete)
+         */
+        private String readLine() throws IOException {
+            lineStart = position;
+            int length = 0;
+            while (true) {
+                if (pos == limit && !fill()) return null;
+                byte b = buffer[pos++];
+                position++;
+                if (b == '\n') return new String(lineBytes, 0, length, StandardCharsets.UTF_8);
+                if (length == lineBytes.length) lineBytes = Arrays.copyOf(lineBytes, length * 2);
+                lineBytes[length++] = b;
+            }
+        }
+    }
+
+    /**
+     * Parse "[time] [component] LEVEL: message", where the level prefix is absent for INFO.
+     */
+    static Record parseText(String line) {
+        if (line.length() < 24 || line.charAt(0) != '[' || line.charAt(20) != ']' || line.charAt(22) != '[') return null;
+        int close = line.indexOf("] ", 23);
+        if (close < 0) return null;
+        long time;
+        try {
+            time = LocalDateTime.parse(line.substring(1, 20), TIME_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        String component = line.substring(23, close);
+        String message = line.substring(close + 2);
+        Logger.Level level = Logger.Level.INFO;
+        for (Logger.Level l : Logger.Level.values()) {
+            if (l != Logger.Level.INFO && l != Logger.Level.OFF && message.startsWith(l.prefix())) {
+                level = l;
+                message = message.substring(l.prefix().length());
+                break;
+            }
+        }
+        return new Record(time, level, component, message);
+    }
+
+    /**
+     * Parse a line of {@link LogEncoder.Format#JSON}: its keys are always in the same order.
+     */
+    static Record parseJson(String line) {
+        try {
+            int[] pos = {0};
+            expect(line, pos, "{\"time\":");
+            String time = readJsonString(line, pos);
+            expect(line, pos, ",\"level\":");
+            String level = readJsonString(line, pos);
+            expect(line, pos, ",\"component\":");
+            String component = readJsonString(line, pos);
+            expect(line, pos, ",\"message\":");
+            String message = readJsonString(line, pos);
+            expect(line, pos, "}");
+            long millis = LocalDateTime.parse(time, JSON_TIME_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            return new Record(millis, Logger.Level.valueOf(level), component, message);
+        } catch (IllegalArgumentException | DateTimeParseException | StringIndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    private static void expect(String line, int[] pos, String token) {
+        if (!line.startsWith(token, pos[0])) throw new IllegalArgumentException("expected " + token);
+        pos[0] += token.length();
+    }
+
+    private static String readJsonString(String line, int[] pos) {
+        expect(line, pos, "\"");
+        StringBuilder sb = new StringBuilder();
+        int i = pos[0];
+        while (true) {
+            char c = line.charAt(i++);
+            if (c == '"') break;
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char e = line.charAt(i++);
+            switch (e) {
+                case 'n' -> sb.append('\n');
+                case 'r' -> sb.append('\r');
+                case 't' -> sb.append('\t');
+                case 'u' -> {
+                    sb.append((char) Integer.parseInt(line.substring(i, i + 4), 16));
+                    i += 4;
+                }
+                default -> sb.append(e);
+            }
+        }
+        pos[0] = i;
+        return sb.toString();
+    }
+
+    /**
+     * Print the records of the given log files as text lines.
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: java Logger.LogDecoder <log file>...");
+            System.exit(2);
+        }
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), false, StandardCharsets.UTF_8);
+        LogEncoder.SecondCache seconds = new LogEncoder.SecondCache();
+        StringBuilder line = new StringBuilder(256);
+        int status = 0;
+        for (String arg : args) {
+            try {
+                read(Path.of(arg), record -> {
+                    line.setLength(0);
+                    line.append('[').append(seconds.format(record.time())).append("] [").append(record.component()).append("] ")
+                            .append(record.level().prefix()).append(record.message());
+                    out.println(line);
+                });
+            } catch (NoSuchFileException e) {
+                System.err.println(arg + ": no such file");
+                status = 1;
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+                status = 1;
+            }
+        }
+        out.flush();
+        System.exit(status);
+    }
+}
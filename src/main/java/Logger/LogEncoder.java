@@ -0,0 +1,305 @@
+package Logger;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Turns log records into bytes, in one of three formats:
+ * <ul>
+ * <li>{@link Format#TEXT}: the usual "[2024-01-31 12:00:00] [Model] message" lines.</li>
+ * <li>{@link Format#JSON}: one object per line with the time (to the millisecond), level, component and message.</li>
+ * <li>{@link Format#BINARY}: tagged records. Components are interned as small ints, defined once per file,
+ * and times are a millisecond offset from the last SECOND record. See {@link LogDecoder} to read them.</li>
+ * </ul>
+ * The formatted second is cached, so a record only formats a timestamp when the second changes.
+ * An encoder is not thread-safe: each writer owns one.
+ */
+public abstract class LogEncoder {
+    public enum Format {
+        TEXT(".log"), JSON(".jsonl"), BINARY(".bin");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * Log file name for a base name, e.g. "app.log", "app.jsonl" or "app.bin".
+         */
+        public String fileName(String baseName) {
+            return baseName + extension;
+        }
+    }
+
+    // binary record tags; an event tag is EVENT + the ordinal of its level
+    static final byte HEADER = 'H';
+    static final byte COMPONENT = 'C';
+    static final byte SECOND = 'S';
+    static final byte EVENT = 0x10;
+    static final int MAGIC = 0x534D4C42; // "SMLB"
+    static final byte VERSION = 1;
+
+    public static LogEncoder create(Format format) {
+        return switch (format) {
+            case TEXT -> new TextEncoder();
+            case JSON -> new JsonEncoder();
+            case BINARY -> new BinaryEncoder();
+        };
+    }
+
+    public abstract Format getFormat();
+
+    /**
+     * Append one record to the buffer.
+     */
+    public abstract void encode(long time, Logger.Level level, String component, String message, Buffer out);
+
+    /**
+     * Append what a new file must start with (only the binary format has something to say).
+     */
+    public void prologue(Buffer out) {
+    }
+
+    /**
+     * Call after each write to the file: the records encoded next may land in a new file, whose
+     * prologue must then restate the state they depend on.
+     */
+    public void startChunk() {
+    }
+
+    /**
+     * Formats the timestamp of a record, once per second.
+     */
+    static final class SecondCache {
+        private final DateTimeFormatter formatter =
+                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+        private long second = Long.MIN_VALUE;
+        private String formatted;
+
+        String format(long time) {
+            long s = Math.floorDiv(time, 1000);
+            if (s != second) {
+                second = s;
+                formatted = formatter.format(Instant.ofEpochSecond(s));
+            }
+            return formatted;
+        }
+    }
+
+    private static final class TextEncoder extends LogEncoder {
+        private final SecondCache seconds = new SecondCache();
+
+        @Override
+        public Format getFormat() {
+            return Format.TEXT;
+        }
+
+        @Override
+        public void encode(long time, Logger.Level level, String component, String message, Buffer out) {
+            out.put((byte) '[').putUtf8(seconds.format(time)).put((byte) ']').put((byte) ' ');
+            out.put((byte) '[').putUtf8(component).put((byte) ']').put((byte) ' ');
+            out.putUtf8(level.prefix()).putUtf8(message).put((byte) '\n');
+        }
+    }
+
+    private static final class JsonEncoder extends LogEncoder {
+        private final SecondCache seconds = new SecondCache();
+
+        @Override
+        public Format getFormat() {
+            return Format.JSON;
+        }
+
+        @Override
+        public void encode(long time, Logger.Level level, String component, String message, Buffer out) {
+            int millis = (int) Math.floorMod(time, 1000L);
+            out.putUtf8("{\"time\":\"").putUtf8(seconds.format(time)).put((byte) '.')
+                    .put((byte) ('0' + millis / 100)).put((byte) ('0' + millis / 10 % 10)).put((byte) ('0' + millis % 10));
+            out.putUtf8("\",\"level\":\"").putUtf8(level.name());
+            out.putUtf8("\",\"component\":").putJsonString(component);
+            out.putUtf8(",\"message\":").putJsonString(message);
+            out.put((byte) '}').put((byte) '\n');
+        }
+    }
+
+    private static final class BinaryEncoder extends LogEncoder {
+        private final HashMap<String, Integer> ids = new HashMap<>();
+        private final List<String> components = new ArrayList<>();
+        private long second = Long.MIN_VALUE;
+        // time base in effect at the start of the records not written yet
+        private long chunkSecond = Long.MIN_VALUE;
+
+        @Override
+        public Format getFormat() {
+            return Format.BINARY;
+        }
+
+        @Override
+        public void prologue(Buffer out) {
+            out.put(HEADER).putInt(MAGIC).put(VERSION);
+            // ids only grow, so the whole dictionary is valid for any record encoded so far
+            for (int id = 0; id < components.size(); id++) defineComponent(id, out);
+            if (chunkSecond != Long.MIN_VALUE) out.put(SECOND).putVarLong(chunkSecond);
+        }
+
+        @Override
+        public void startChunk() {
+            chunkSecond = second;
+        }
+
+        @Override
+        public void encode(long time, Logger.Level level, String component, String message, Buffer out) {
+            Integer id = ids.get(component);
+            if (id == null) {
+                id = components.size();
+                ids.put(component, id);
+                components.add(component);
+                defineComponent(id, out);
+            }
+            long s = Math.floorDiv(time, 1000);
+            if (s != second) {
+                second = s;
+                out.put(SECOND).putVarLong(s);
+            }
+            out.put((byte) (EVENT + level.ordinal())).putVarLong(id).putVarLong(time - s * 1000);
+            out.putVarLong(Buffer.utf8Length(message)).putUtf8(message);
+        }
+
+        private void defineComponent(int id, Buffer out) {
+            String name = components.get(id);
+            out.put(COMPONENT).putVarLong(id).putVarLong(Buffer.utf8Length(name)).putUtf8(name);
+        }
+    }
+
+    /**
+     * Growable byte array, filled without intermediate strings or byte arrays.
+     */
+    public static final class Buffer {
+        private byte[] data;
+        private int length;
+
+        public Buffer(int capacity) {
+            this.data = new byte[Math.max(16, capacity)];
+        }
+
+        public byte[] array() {
+            return data;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public void clear() {
+            length = 0;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + extra));
+            }
+        }
+
+        public Buffer put(byte b) {
+            ensure(1);
+            data[length++] = b;
+            return this;
+        }
+
+        public Buffer putInt(int value) {
+            ensure(4);
+            data[length++] = (byte) (value >>> 24);
+            data[length++] = (byte) (value >>> 16);
+            data[length++] = (byte) (value >>> 8);
+            data[length++] = (byte) value;
+            return this;
+        }
+
+        /**
+         * Unsigned LEB128: 7 bits per byte, high bit set on all bytes but the last.
+         */
+        public Buffer putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+            return this;
+        }
+
+        public Buffer putUtf8(CharSequence s) {
+            int n = s.length();
+            ensure(n * 3);
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    data[length++] = (byte) c;
+                } else if (c < 0x800) {
+                    data[length++] = (byte) (0xC0 | (c >> 6));
+                    data[length++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    data[length++] = (byte) (0xF0 | (cp >> 18));
+                    data[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    data[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    data[length++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    data[length++] = '?'; // unpaired surrogate, as String.getBytes does
+                } else {
+                    data[length++] = (byte) (0xE0 | (c >> 12));
+                    data[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    data[length++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Quoted JSON string, with quotes, backslashes and control characters escaped.
+         */
+        public Buffer putJsonString(String s) {
+            put((byte) '"');
+            int from = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c != '"' && c != '\\' && c >= 0x20) continue;
+                putUtf8(s.subSequence(from, i));
+                switch (c) {
+                    case '"' -> putUtf8("\\\"");
+                    case '\\' -> putUtf8("\\\\");
+                    case '\n' -> putUtf8("\\n");
+                    case '\r' -> putUtf8("\\r");
+                    case '\t' -> putUtf8("\\t");
+                    default -> putUtf8(String.format("\\u%04x", (int) c));
+                }
+                from = i + 1;
+            }
+            return putUtf8(s.subSequence(from, s.length())).put((byte) '"');
+        }
+
+        static int utf8Length(String s) {
+            int n = s.length();
+            int bytes = n;
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) continue;
+                if (c < 0x800) {
+                    bytes += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    bytes += 2; // 4 bytes for 2 chars
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            }
+            return bytes;
+        }
+    }
+}
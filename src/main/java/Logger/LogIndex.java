@@ -0,0 +1,291 @@
+package Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sparse index of a log file and of its gzipped archives, to find the records of a component in a
+ * time range without reading everything.
+ * <p>
+ * Each file is cut into blocks of about {@link #BLOCK_BYTES} that start on a record. A block keeps
+ * its offset, the time range of its records and a bitmask of their components (components beyond
+ * the 63rd share the last bit), and for binary logs the dictionary and time base needed to decode
+ * from its offset. The active file is indexed incrementally as it grows, and again from the start
+ * when it rotates; archives are indexed once. A query only decodes the blocks that may match.
+ */
+public final class LogIndex implements AutoCloseable {
+    static final int BLOCK_BYTES = 64 * 1024;
+    private static final int OTHER_COMPONENTS = 63;
+
+    private record Block(long offset, long end, long minTime, long maxTime, long components, int records,
+                         List<String> dictionary, long second) {
+        boolean mayMatch(long mask, long from, long to) {
+            return (components & mask) != 0 && maxTime >= from && minTime <= to;
+        }
+    }
+
+    /**
+     * Result of a query: the matching records (at most the limit), how many matched in total, and how much was read.
+     */
+    public record Result(List<LogDecoder.Record> records, int matches, int blocksRead, int blocks) {
+    }
+
+    private final Path file;
+    private final Map<String, Integer> componentBits = new HashMap<>();
+    private final Map<Path, FileIndex> files = new HashMap<>();
+    private ScheduledExecutorService background;
+
+    public LogIndex(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Keep the index up to date from a background thread, so that queries only index the last few records.
+     */
+    public synchronized void startBackgroundIndexing(long periodMillis) {
+        if (background != null) return;
+        background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "log-indexer");
+            t.setDaemon(true);
+            return t;
+        });
+        background.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (IOException e) {
+                System.err.println("Log indexing of " + file + " failed: " + e.getMessage());
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (background != null) {
+            background.shutdownNow();
+            background = null;
+        }
+    }
+
+    /**
+     * Index what was written since the last refresh: new records of the active file, new archives.
+     */
+    public synchronized void refresh() throws IOException {
+        List<Path> current = new ArrayList<>();
+        if (Files.exists(file)) current.add(file);
+        Path dir = file.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, file.getFileName() + ".*.gz")) {
+            for (Path p : stream) current.add(p);
+        }
+        files.keySet().retainAll(current);
+        for (Path p : current) {
+            FileIndex index = files.get(p);
+            try {
+                if (index == null || !index.update()) {
+                    index = new FileIndex(p);
+                    index.update();
+                    files.put(p, index);
+                }
+            } catch (NoSuchFileException e) {
+                // deleted by the retention of the rolling output meanwhile
+                files.remove(p);
+            }
+        }
+    }
+
+    /**
+     * Records of a component (or of all components if null) between two times (inclusive, in
+     * milliseconds), whose message contains a text (if not null), in file order, oldest archive first.
+     *
+     * @param limit maximum number of records returned; the others are only counted
+     */
+    public synchronized Result query(String component, long from, long to, String text, int limit) throws IOException {
+        refresh();
+        long mask = component == null ? -1L : componentMask(component);
+        List<LogDecoder.Record> records = new ArrayList<>();
+        int matches = 0, blocksRead = 0, blocks = 0;
+
+        List<FileIndex> ordered = new ArrayList<>(files.values());
+        ordered.sort(Comparator.comparingLong(FileIndex::firstTime).thenComparing(f -> f.archive ? 0 : 1));
+        for (FileIndex index : ordered) {
+            blocks += index.blocks.size();
+            int i = 0;
+            while (i < index.blocks.size()) {
+                if (!index.blocks.get(i).mayMatch(mask, from, to)) {
+                    i++;
+                    continue;
+                }
+                // decode a run of consecutive candidate blocks in one pass
+                int last = i;
+                while (last + 1 < index.blocks.size() && index.blocks.get(last + 1).mayMatch(mask, from, to)) last++;
+                Block first = index.blocks.get(i);
+                long end = index.blocks.get(last).end;
+                blocksRead += last - i + 1;
+                try (InputStream in = LogDecoder.open(index.path)) {
+                    in.skipNBytes(first.offset);
+                    LogDecoder.Cursor cursor = new LogDecoder.Cursor(in, first.offset, index.format, first.dictionary, first.second, false);
+                    LogDecoder.Record record;
+                    while ((record = cursor.next()) != null && cursor.recordStart() < end) {
+                        if (record.time() < from || record.time() > to) continue;
+                        if (component != null && !component.equals(record.component())) continue;
+                        if (text != null && !record.message().contains(text)) continue;
+                        matches++;
+                        if (records.size() < limit) records.add(record);
+                    }
+                } catch (NoSuchFileException e) {
+                    break; // rotated or deleted since the refresh
+                }
+                i = last + 1;
+            }
+        }
+        return new Result(records, matches, blocksRead, blocks);
+    }
+
+    public synchronized String getStats() {
+        long blocks = 0, records = 0, bytes = 0;
+        for (FileIndex index : files.values()) {
+            blocks += index.blocks.size();
+            for (Block b : index.blocks) records += b.records;
+            bytes += index.indexed;
+        }
+        return String.format("file=%s, files=%d, blocks=%d, records=%d, indexedBytes=%d, components=%d",
+                file, files.size(), blocks, records, bytes, componentBits.size());
+    }
+
+    private long componentMask(String component) {
+        Integer bit = componentBits.get(component);
+        if (bit == null) {
+            // never seen: only blocks with components beyond the bitmask may hold it
+            return componentBits.size() >= OTHER_COMPONENTS ? 1L << OTHER_COMPONENTS : 0;
+        }
+        return 1L << bit;
+    }
+
+    private long componentBit(String component) {
+        Integer bit = componentBits.get(component);
+        if (bit == null) {
+            if (componentBits.size() >= OTHER_COMPONENTS) return 1L << OTHER_COMPONENTS;
+            bit = componentBits.size();
+            componentBits.put(component, bit);
+        }
+        return 1L << bit;
+    }
+
+    /**
+     * Blocks of one file, extended as the file grows.
+     */
+    private final class FileIndex {
+        final Path path;
+        final boolean archive;
+        Object fileKey;
+        LogEncoder.Format format;
+        final List<Block> blocks = new ArrayList<>();
+        // where indexing resumes: the start of the first record not indexed, with the binary state there
+        long indexed;
+        List<String> dictionary = List.of();
+        long second;
+
+        FileIndex(Path path) {
+            this.path = path;
+            this.archive = !path.equals(file);
+        }
+
+        long firstTime() {
+            return blocks.isEmpty() ? Long.MAX_VALUE : blocks.get(0).minTime;
+        }
+
+        /**
+         * Index the records written since the last update.
+         *
+         * @return false if the file was replaced (rotated) and must be indexed from the start
+         */
+        boolean update() throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (fileKey != null && !Objects.equals(fileKey, attributes.fileKey())) return false;
+            if (archive && fileKey != null) return true; // archives do not change
+            if (!archive && attributes.size() < indexed) return false;
+            fileKey = attributes.fileKey();
+            if (!archive && attributes.size() == indexed) return true;
+
+            // extend the last block rather than adding a small one at each update
+            if (!blocks.isEmpty()) {
+                Block last = blocks.get(blocks.size() - 1);
+                if (last.end == indexed && last.end - last.offset < BLOCK_BYTES) {
+                    blocks.remove(blocks.size() - 1);
+                    indexed = last.offset;
+                    dictionary = last.dictionary;
+                    second = last.second;
+                }
+            }
+
+            try (InputStream in = LogDecoder.open(path)) {
+                in.skipNBytes(indexed);
+                LogDecoder.Cursor cursor = new LogDecoder.Cursor(in, indexed, format, dictionary, second, false);
+                long blockStart = -1, minTime = Long.MAX_VALUE, maxTime = Long.MIN_VALUE, mask = 0;
+                int records = 0;
+                List<String> blockDictionary = dictionary;
+                long blockSecond = second;
+                int dictionaryVersion = cursor.dictionaryVersion();
+                List<String> snapshot = dictionary;
+
+                LogDecoder.Record record;
+                while (true) {
+                    // a block starts where the cursor stands, with the (binary) state there,
+                    // so that it includes the dictionary and time records before its first event
+                    if (cursor.dictionaryVersion() != dictionaryVersion) {
+                        dictionaryVersion = cursor.dictionaryVersion();
+                        snapshot = List.copyOf(cursor.components());
+                    }
+                    long stateOffset = cursor.nextStart();
+                    long stateSecond = cursor.second();
+                    List<String> stateDictionary = snapshot;
+                    if ((record = cursor.next()) == null) break;
+
+                    if (blockStart < 0) {
+                        blockStart = stateOffset;
+                        blockDictionary = stateDictionary;
+                        blockSecond = stateSecond;
+                    }
+                    minTime = Math.min(minTime, record.time());
+                    maxTime = Math.max(maxTime, record.time());
+                    mask |= componentBit(record.component());
+                    records++;
+                    if (cursor.nextStart() - blockStart >= BLOCK_BYTES) {
+                        blocks.add(new Block(blockStart, cursor.nextStart(), minTime, maxTime, mask, records, blockDictionary, blockSecond));
+                        blockStart = -1;
+                        minTime = Long.MAX_VALUE;
+                        maxTime = Long.MIN_VALUE;
+                        mask = 0;
+                        records = 0;
+                    }
+                }
+                if (blockStart >= 0) {
+                    blocks.add(new Block(blockStart, cursor.nextStart(), minTime, maxTime, mask, records, blockDictionary, blockSecond));
+                }
+                format = cursor.format();
+                indexed = cursor.nextStart();
+                if (cursor.dictionaryVersion() != dictionaryVersion) snapshot = List.copyOf(cursor.components());
+                dictionary = snapshot;
+                second = cursor.second();
+            }
+            return true;
+        }
+    }
+}
@@ -1,22 +1,55 @@
 package Logger;
 
-import java.io.FileWriter;
+import Metrics.Counter;
+import Metrics.LatencyHistogram;
+import Metrics.MetricsRegistry;
+
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 public class Logger {
+    private static final LatencyHistogram WRITE_LATENCY = MetricsRegistry.getInstance().histogram("logger_write",
+            "Time a caller spends writing a log record (or queueing it, when logging asynchronously).");
+    // by level ordinal
+    private static final Counter[] RECORDS = levelCounters();
+
     private static Logger instance;
-    private final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private PrintWriter fileWriter;
+    private RollingFileOutput fileOutput;
+    private LogEncoder fileEncoder;
+    private final LogEncoder.Buffer fileBuffer = new LogEncoder.Buffer(512);
+    private final LogEncoder.SecondCache consoleSeconds = new LogEncoder.SecondCache();
     private boolean logToFile = false;
-    private boolean logToConsole = true;
+    // applied to the log files opened afterwards
+    private RollingFileOutput.Policy rollingPolicy = RollingFileOutput.Policy.NONE;
+    private LogEncoder.Format fileFormat = LogEncoder.Format.TEXT;
+    private volatile boolean logToConsole = true;
+    // set when logging asynchronously: log() and error() then only queue the record
+    private volatile AsyncLogWriter asyncWriter;
+    private Thread shutdownHook;
+    // thresholds: per component, else the default one
+    private volatile Level defaultLevel = Level.INFO;
+    private final ConcurrentHashMap<String, Level> componentLevels = new ConcurrentHashMap<>();
 
     private Logger() {
         enableFileLogging("app.log");
     }
 
+    private static Counter[] levelCounters() {
+        Counter[] counters = new Counter[Level.values().length];
+        for (Level level : Level.values()) {
+            if (level == Level.OFF) continue; // never written
+            String name = level.name().toLowerCase(Locale.ROOT);
+            counters[level.ordinal()] = MetricsRegistry.getInstance().counter("logger_" + name + "_records", "Log records of level " + level + ".");
+        }
+        return counters;
+    }
+
     public static Logger getInstance() {
         if (instance == null) {
             synchronized (Logger.class) {
@@ -34,8 +67,18 @@ public class Logger {
      * @param filepath Path to the log file
      */
     public synchronized void enableFileLogging(String filepath) {
+        disableFileLogging();
         try {
-            fileWriter = new PrintWriter(new FileWriter(filepath, true), true);
+            fileOutput = new RollingFileOutput(Path.of(filepath), rollingPolicy);
+            LogEncoder encoder = LogEncoder.create(fileFormat);
+            LogEncoder.Buffer prologue = new LogEncoder.Buffer(256);
+            // called from writeSync
+            fileOutput.setPrologue(() -> {
+                prologue.clear();
+                encoder.prologue(prologue);
+                return ByteBuffer.wrap(prologue.array(), 0, prologue.length());
+            });
+            fileEncoder = encoder;
             logToFile = true;
             log("Logger", "File logging enabled: " + filepath);
         } catch (IOException e) {
@@ -43,13 +86,93 @@ public class Logger {
         }
     }
 
+    /**
+     * Format of the log files opened afterwards (see {@link LogDecoder} to read JSON and binary logs).
+     */
+    public synchronized void setFileFormat(LogEncoder.Format format) {
+        fileFormat = format;
+    }
+
+    /**
+     * Log to a file that is rolled over when it reaches maxBytes or gets older than intervalMillis
+     * (0 disables a trigger). Rolled files are gzipped in the background and only the newest
+     * maxArchives are kept. The policy also applies to asynchronous file logging enabled afterwards.
+     */
+    public synchronized void enableRollingFileLogging(String filepath, long maxBytes, long intervalMillis, int maxArchives) {
+        rollingPolicy = new RollingFileOutput.Policy(maxBytes, intervalMillis, maxArchives);
+        enableFileLogging(filepath);
+    }
+
+    /**
+     * Log asynchronously to a file: callers only queue their records, which are written in batches
+     * by a background thread (and printed to the console from it, if console logging is enabled).
+     * The remaining records are written when file logging is disabled or the JVM shuts down.
+     *
+     * @param capacity number of records that can be queued
+     * @param policy   what to do when the queue is full
+     */
+    public synchronized void enableAsyncFileLogging(String filepath, int capacity, AsyncLogWriter.OverflowPolicy policy) {
+        disableFileLogging();
+        try {
+            asyncWriter = new AsyncLogWriter(new RollingFileOutput(Path.of(filepath), rollingPolicy), LogEncoder.create(fileFormat),
+                    capacity, policy, logToConsole);
+            shutdownHook = new Thread(this::disableFileLogging, "logger-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+            log("Logger", "Asynchronous file logging enabled: " + filepath + " (" + policy + ")");
+        } catch (IOException e) {
+            System.err.println("Failed to enable asynchronous file logging: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return statistics of the asynchronous writer, or null when logging synchronously
+     */
+    public String getAsyncStats() {
+        AsyncLogWriter writer = asyncWriter;
+        return writer == null ? null : writer.getStats();
+    }
+
+    /**
+     * @return the log file written to, or null when not logging to a file
+     */
+    public synchronized Path getLogFile() {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) return writer.getFile();
+        return fileOutput == null ? null : fileOutput.getFile();
+    }
+
+    /**
+     * @return statistics of the synchronous log file (size, rollovers), or null when there is none
+     */
+    public synchronized String getFileStats() {
+        return fileOutput == null ? null : fileOutput.getStats();
+    }
+
     /**
      * Disable logging to file
      */
     public synchronized void disableFileLogging() {
-        if (fileWriter != null) {
-            fileWriter.close();
-            fileWriter = null;
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            asyncWriter = null;
+            writer.close();
+            if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                } catch (IllegalStateException e) {
+                    // already shutting down
+                }
+            }
+            shutdownHook = null;
+        }
+        if (fileOutput != null) {
+            try {
+                fileOutput.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close log file: " + e.getMessage());
+            }
+            fileOutput = null;
+            fileEncoder = null;
         }
         logToFile = false;
     }
@@ -59,6 +182,84 @@ public class Logger {
      */
     public void setConsoleLogging(boolean enabled) {
         this.logToConsole = enabled;
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) writer.setConsole(enabled);
+    }
+
+    /**
+     * Severity of a log record. A record is written when its level is at least the threshold of its component.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR, OFF;
+
+        // prefix of the message in the formatted record
+        String prefix() {
+            return this == INFO ? "" : name() + ": ";
+        }
+
+        boolean toStderr() {
+            return this == WARN || this == ERROR;
+        }
+    }
+
+    /**
+     * Whether a record of this level from this component would be written.
+     * Use it to guard log statements whose message is expensive to build.
+     */
+    public boolean isEnabled(String component, Level level) {
+        Level threshold = componentLevels.isEmpty() ? defaultLevel : componentLevels.getOrDefault(component, defaultLevel);
+        return level != Level.OFF && level.compareTo(threshold) >= 0;
+    }
+
+    public void setLevel(Level level) {
+        defaultLevel = level;
+    }
+
+    /**
+     * Set the threshold of one component, or go back to the default threshold with null.
+     */
+    public void setLevel(String component, Level level) {
+        if (level == null) componentLevels.remove(component);
+        else componentLevels.put(component, level);
+    }
+
+    public Level getLevel(String component) {
+        return componentLevels.getOrDefault(component, defaultLevel);
+    }
+
+    /**
+     * Apply level settings such as "WARN" (default threshold), "Model=WARN", or "Model=DEFAULT"
+     * (back to the default threshold), several of them separated by spaces.
+     *
+     * @return false if a setting is malformed; the settings before it are applied
+     */
+    public boolean applyLevels(String settings) {
+        for (String setting : settings.trim().split("\\s+")) {
+            if (setting.isEmpty()) continue;
+            int eq = setting.indexOf('=');
+            try {
+                if (eq < 0) {
+                    setLevel(Level.valueOf(setting.toUpperCase()));
+                } else {
+                    String component = setting.substring(0, eq);
+                    String value = setting.substring(eq + 1).toUpperCase();
+                    if (component.isEmpty()) return false;
+                    setLevel(component, value.equals("DEFAULT") ? null : Level.valueOf(value));
+                }
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Current thresholds, e.g. "default=INFO, Model=WARN".
+     */
+    public String describeLevels() {
+        StringBuilder sb = new StringBuilder("default=").append(defaultLevel);
+        new TreeMap<>(componentLevels).forEach((component, level) -> sb.append(", ").append(component).append('=').append(level));
+        return sb.toString();
     }
 
     /**
@@ -67,41 +268,122 @@ public class Logger {
      * @param component The component generating the log (e.g., "Controller", "Model", "View", "TES")
      * @param message   The message to log
      */
-    public synchronized void log(String component, String message) {
-        String timestamp = LocalDateTime.now().format(timeFormatter);
-        String formattedMessage = String.format("[%s] [%s] %s", timestamp, component, message);
+    public void log(String component, String message) {
+        if (isEnabled(component, Level.INFO)) write(Level.INFO, component, message);
+    }
 
-        if (logToConsole) {
-            System.out.println(formattedMessage);
-        }
+    /**
+     * Log a message built only if it will be written.
+     */
+    public void log(String component, Supplier<String> message) {
+        if (isEnabled(component, Level.INFO)) write(Level.INFO, component, message.get());
+    }
 
-        if (logToFile && fileWriter != null) {
-            fileWriter.println(formattedMessage);
-        }
+    /**
+     * Log a message with "{}" placeholders replaced by the arguments (arrays as with Arrays.toString),
+     * formatted only if it will be written. Primitive arguments are boxed before the level is checked:
+     * guard with {@link #isEnabled} on hot paths.
+     */
+    public void log(String component, String pattern, Object arg) {
+        if (isEnabled(component, Level.INFO)) write(Level.INFO, component, format(pattern, arg, null, null));
+    }
+
+    public void log(String component, String pattern, Object arg1, Object arg2) {
+        if (isEnabled(component, Level.INFO)) write(Level.INFO, component, format(pattern, arg1, arg2, null));
+    }
+
+    public void log(String component, String pattern, Object arg1, Object arg2, Object arg3) {
+        if (isEnabled(component, Level.INFO)) write(Level.INFO, component, format(pattern, arg1, arg2, arg3));
+    }
+
+    public void log(String component, Level level, String message) {
+        if (isEnabled(component, level)) write(level, component, message);
+    }
+
+    public void log(String component, Level level, Supplier<String> message) {
+        if (isEnabled(component, level)) write(level, component, message.get());
+    }
+
+    public void debug(String component, String message) {
+        if (isEnabled(component, Level.DEBUG)) write(Level.DEBUG, component, message);
+    }
+
+    public void debug(String component, Supplier<String> message) {
+        if (isEnabled(component, Level.DEBUG)) write(Level.DEBUG, component, message.get());
+    }
+
+    public void warn(String component, String message) {
+        if (isEnabled(component, Level.WARN)) write(Level.WARN, component, message);
     }
 
     /**
      * Log an error message
      */
-    public synchronized void error(String component, String message) {
-        String timestamp = LocalDateTime.now().format(timeFormatter);
-        String formattedMessage = String.format("[%s] [%s] ERROR: %s", timestamp, component, message);
+    public void error(String component, String message) {
+        if (isEnabled(component, Level.ERROR)) write(Level.ERROR, component, message);
+    }
+
+    private static String format(String pattern, Object arg1, Object arg2, Object arg3) {
+        StringBuilder sb = new StringBuilder(pattern.length() + 32);
+        int argIndex = 0;
+        int from = 0;
+        int at;
+        while (argIndex < 3 && (at = pattern.indexOf("{}", from)) >= 0) {
+            Object arg = argIndex == 0 ? arg1 : argIndex == 1 ? arg2 : arg3;
+            sb.append(pattern, from, at).append(arg instanceof Object[] array ? Arrays.toString(array) : arg);
+            from = at + 2;
+            argIndex++;
+        }
+        return sb.append(pattern, from, pattern.length()).toString();
+    }
+
+    private void write(Level level, String component, String message) {
+        long start = System.nanoTime();
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) writer.submit(level, component, message);
+        else writeSync(level, component, message);
+        RECORDS[level.ordinal()].increment();
+        WRITE_LATENCY.recordSince(start);
+    }
+
+    private synchronized void writeSync(Level level, String component, String message) {
+        long now = System.currentTimeMillis();
 
         if (logToConsole) {
-            System.err.println(formattedMessage);
+            String formattedMessage = "[" + consoleSeconds.format(now) + "] [" + component + "] " + level.prefix() + message;
+            if (level.toStderr()) System.err.println(formattedMessage);
+            else System.out.println(formattedMessage);
         }
 
-        if (logToFile && fileWriter != null) {
-            fileWriter.println(formattedMessage);
+        if (logToFile && fileOutput != null) {
+            fileBuffer.clear();
+            fileEncoder.encode(now, level, component, message, fileBuffer);
+            try {
+                fileOutput.write(ByteBuffer.wrap(fileBuffer.array(), 0, fileBuffer.length()));
+            } catch (IOException e) {
+                System.err.println("Failed to write log file: " + e.getMessage());
+            } finally {
+                fileEncoder.startChunk();
+            }
         }
     }
 
     /**
      * Flush the file writer
      */
-    public synchronized void flush() {
-        if (fileWriter != null) {
-            fileWriter.flush();
+    public void flush() {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) writer.flush();
+        flushSync();
+    }
+
+    private synchronized void flushSync() {
+        if (fileOutput != null) {
+            try {
+                fileOutput.force();
+            } catch (IOException e) {
+                System.err.println("Failed to flush log file: " + e.getMessage());
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,288 @@
+package Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Append-only log file that rolls over when it grows past a size or gets older than an interval.
+ * <p>
+ * Writers only append to the current channel and count the bytes. When a trigger fires, a
+ * background thread renames the file (the channel still open on it keeps working), opens a new
+ * one under the original name and publishes its channel, so writers switch to it on their next
+ * write. The same thread then closes the old channel, gzips the rolled file and deletes the
+ * oldest archives beyond the retention count. Writers never wait on any of this.
+ * <p>
+ * The file is renamed while it is still open. Where that fails (e.g. on Windows when another
+ * process holds the file), the rollover is not retried on every write: the triggers back off
+ * until the next interval, or {@link #RETRY_MILLIS} without a time trigger, and logging goes on
+ * in the current file meanwhile.
+ */
+public final class RollingFileOutput implements AutoCloseable {
+    /**
+     * When to roll over and how many archives to keep.
+     *
+     * @param maxBytes       roll when the file reaches this size, 0 for no size trigger
+     * @param intervalMillis roll when the file is older than this, 0 for no time trigger
+     * @param maxArchives    number of gzipped archives kept
+     */
+    public record Policy(long maxBytes, long intervalMillis, int maxArchives) {
+        public static final Policy NONE = new Policy(0, 0, 0);
+
+        boolean rolls() {
+            return maxBytes > 0 || intervalMillis > 0;
+        }
+    }
+
+    private static final DateTimeFormatter ARCHIVE_STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    static final long RETRY_MILLIS = 60_000;
+
+    private final Path file;
+    private final Policy policy;
+    private volatile FileChannel channel;
+    private final AtomicLong size = new AtomicLong();
+    private volatile long rollAtMillis;
+    // after a failed rollover, the size trigger is ignored until then
+    private volatile long retryAtMillis;
+    private final AtomicBoolean rollPending = new AtomicBoolean();
+    private final ExecutorService roller;
+    private volatile boolean closed;
+    // written before the first bytes of each file, by the thread that writes them
+    private volatile Supplier<ByteBuffer> prologue;
+    private FileChannel prologueWritten;
+
+    private final LongAdder rolls = new LongAdder();
+    private final LongAdder archived = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    public RollingFileOutput(Path file, Policy policy) throws IOException {
+        this.file = file;
+        this.policy = policy;
+        this.channel = open(file);
+        this.size.set(channel.size());
+        this.rollAtMillis = policy.intervalMillis > 0 ? System.currentTimeMillis() + policy.intervalMillis : Long.MAX_VALUE;
+        if (policy.rolls()) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread t = new Thread(r, "log-roller");
+                t.setDaemon(true);
+                return t;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            this.roller = pool;
+        } else {
+            this.roller = null;
+        }
+    }
+
+    private static FileChannel open(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Set the bytes every file must start with, such as a header. They are requested from the
+     * writing thread when it first writes to a file, so writes must then come from one thread at a time.
+     */
+    public void setPrologue(Supplier<ByteBuffer> prologue) {
+        this.prologue = prologue;
+    }
+
+    /**
+     * Append the remaining bytes of the buffer. Safe to call from several threads (without a prologue).
+     */
+    public void write(ByteBuffer bytes) throws IOException {
+        int length = bytes.remaining();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                FileChannel ch = channel;
+                try {
+                    if (prologue != null && ch != prologueWritten) {
+                        ByteBuffer start = prologue.get();
+                        while (start.hasRemaining()) ch.write(start);
+                        prologueWritten = ch;
+                    }
+                    while (bytes.hasRemaining()) ch.write(bytes);
+                    break;
+                } catch (ClosedByInterruptException e) {
+                    // the channel was closed because this thread is interrupted: retry without the
+                    // interrupt status (restored below), or the new channel would be closed as well
+                    if (closed) throw e;
+                    interrupted |= Thread.interrupted();
+                    reopen(ch);
+                } catch (ClosedChannelException e) {
+                    // swapped and closed by the roller (retry on the new channel),
+                    // or closed by the interrupt of another writer (reopen it)
+                    if (closed) throw e;
+                    reopen(ch);
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        if (roller != null) checkTriggers(size.addAndGet(length));
+    }
+
+    /**
+     * Replace a channel closed by an interrupt with a new one on the same file, unless it was replaced already.
+     */
+    private synchronized void reopen(FileChannel broken) throws IOException {
+        if (channel != broken) return;
+        FileChannel fresh = open(file);
+        // same file: its prologue is written already
+        if (prologueWritten == broken) prologueWritten = fresh;
+        channel = fresh;
+    }
+
+    private void checkTriggers(long currentSize) {
+        boolean due = (policy.maxBytes > 0 && currentSize >= policy.maxBytes && System.currentTimeMillis() >= retryAtMillis)
+                || (policy.intervalMillis > 0 && System.currentTimeMillis() >= rollAtMillis);
+        if (due && !closed && rollPending.compareAndSet(false, true)) {
+            roller.execute(this::roll);
+        }
+    }
+
+    private void roll() {
+        try {
+            Path rolled;
+            FileChannel old;
+            // not while a writer reopens the channel
+            synchronized (this) {
+                old = channel;
+                try {
+                    rolled = swap();
+                } catch (IOException e) {
+                    backOff(e);
+                    return;
+                }
+            }
+            size.set(0);
+            if (policy.intervalMillis > 0) rollAtMillis = System.currentTimeMillis() + policy.intervalMillis;
+            rolls.increment();
+            old.close();
+
+            compress(rolled);
+            deleteOldArchives();
+        } catch (IOException e) {
+            System.err.println("Log archiving of " + file + " failed: " + e.getMessage());
+        } finally {
+            rollPending.set(false);
+        }
+    }
+
+    /**
+     * Rename the file and publish a channel on a new one under the original name.
+     *
+     * @return the renamed file
+     */
+    private Path swap() throws IOException {
+        Path rolled = archivePath(file.getFileName() + "." + LocalDateTime.now().format(ARCHIVE_STAMP));
+        Files.move(file, rolled, StandardCopyOption.ATOMIC_MOVE);
+        try {
+            channel = open(file);
+        } catch (IOException e) {
+            // the writers are still on the renamed file: give it its name back
+            Files.move(rolled, file, StandardCopyOption.ATOMIC_MOVE);
+            throw e;
+        }
+        return rolled;
+    }
+
+    /**
+     * Keep writing to the current file and retry the rollover after a delay, rather than on every write.
+     */
+    private void backOff(IOException cause) {
+        failures.increment();
+        long delay = policy.intervalMillis > 0 ? policy.intervalMillis : RETRY_MILLIS;
+        long retryAt = System.currentTimeMillis() + delay;
+        retryAtMillis = retryAt;
+        if (policy.intervalMillis > 0) rollAtMillis = retryAt;
+        System.err.println("Log rollover of " + file + " failed, retrying in " + delay / 1000 + " s: " + cause.getMessage());
+    }
+
+    private Path archivePath(String baseName) {
+        Path candidate = file.resolveSibling(baseName);
+        for (int i = 1; Files.exists(candidate) || Files.exists(candidate.resolveSibling(candidate.getFileName() + ".gz")); i++) {
+            candidate = file.resolveSibling(String.format("%s-%04d", baseName, i));
+        }
+        return candidate;
+    }
+
+    private void compress(Path rolled) throws IOException {
+        Path gz = rolled.resolveSibling(rolled.getFileName() + ".gz");
+        try (InputStream in = Files.newInputStream(rolled);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz), 64 * 1024)) {
+            in.transferTo(out);
+        }
+        Files.delete(rolled);
+        archived.increment();
+    }
+
+    private void deleteOldArchives() throws IOException {
+        List<Path> archives = new ArrayList<>();
+        Path dir = file.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, file.getFileName() + ".*.gz")) {
+            for (Path p : stream) archives.add(p);
+        }
+        // without ".gz", archive names sort by roll time (a name before its "-0001" successor)
+        archives.sort(Comparator.comparing(p -> {
+            String name = p.getFileName().toString();
+            return name.substring(0, name.length() - 3);
+        }));
+        for (int i = 0; i < archives.size() - policy.maxArchives; i++) {
+            Files.deleteIfExists(archives.get(i));
+        }
+    }
+
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public String getStats() {
+        return String.format("file=%s, size=%d, rolls=%d, archived=%d, failedRolls=%d, policy=%s",
+                file, size.get(), rolls.sum(), archived.sum(), failures.sum(), policy);
+    }
+
+    /**
+     * Wait for a rollover in progress, then close the file.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (roller != null) {
+            roller.shutdown();
+            try {
+                roller.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        channel.close();
+    }
+}
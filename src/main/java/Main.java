@@ -1,18 +1,37 @@
 import Controller.SmartMedicalController;
+import Logger.AsyncLogWriter;
+import Logger.LogEncoder;
 import Logger.Logger;
+import Metrics.MetricsRegistry;
+import Metrics.MetricsServer;
 import Model.Feature;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Scanner;
 
 public class Main {
+    private static final int ASYNC_LOG_CAPACITY = 8192;
+    private static final long LOG_ROLL_INTERVAL_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int LOG_ARCHIVES = 7;
     private static Logger logger = Logger.getInstance();
     private static SmartMedicalController controller = SmartMedicalController.getInstance();
+    private static MetricsServer metricsServer;
 
     private static void printInfo() {
         logger.log("System", "System Ready. Enter commands:");
         SmartMedicalController.printHelp(logger);
     }
 
+    private static void startMetricsServer(int port) {
+        try {
+            metricsServer = new MetricsServer(MetricsRegistry.getInstance(), port);
+            logger.log("System", "Metrics served at http://127.0.0.1:" + metricsServer.getPort() + "/metrics");
+        } catch (IOException e) {
+            logger.error("System", "Failed to start the metrics server: " + e.getMessage());
+        }
+    }
+
     private static void commandLoop() {
         Scanner in = new Scanner(System.in);
         printInfo();
@@ -31,6 +50,40 @@ public class Main {
     }
 
     public static void main(String[] args) {
+        boolean asyncLog = false;
+        long rollMegabytes = 0;
+        LogEncoder.Format logFormat = LogEncoder.Format.TEXT;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                // java Main --feature-model features.txt (hot-reloaded when the file changes)
+                case "--feature-model" -> {
+                    if (i + 1 < args.length) controller.watchFeatureModel(Path.of(args[++i]));
+                }
+                // java Main --async-log: the log file is written by a background thread
+                case "--async-log" -> asyncLog = true;
+                // java Main --log-roll 10: app.log rolls at 10 MB or daily, the last 7 rolled files are kept gzipped
+                case "--log-roll" -> {
+                    if (i + 1 < args.length) rollMegabytes = Long.parseLong(args[++i]);
+                }
+                // java Main --log-format binary: app.bin instead of app.log, read it with java Logger.LogDecoder app.bin
+                case "--log-format" -> {
+                    if (i + 1 < args.length) logFormat = LogEncoder.Format.valueOf(args[++i].toUpperCase());
+                }
+                // java Main --metrics-port 9400: Prometheus metrics at http://127.0.0.1:9400/metrics
+                case "--metrics-port" -> {
+                    if (i + 1 < args.length) startMetricsServer(Integer.parseInt(args[++i]));
+                }
+                default -> logger.error("System", "Unknown argument: " + args[i]);
+            }
+        }
+        String logFile = logFormat.fileName("app");
+        logger.setFileFormat(logFormat);
+        if (rollMegabytes > 0) {
+            logger.enableRollingFileLogging(logFile, rollMegabytes * 1024 * 1024, LOG_ROLL_INTERVAL_MILLIS, LOG_ARCHIVES);
+        } else if (logFormat != LogEncoder.Format.TEXT) {
+            logger.enableFileLogging(logFile);
+        }
+        if (asyncLog) logger.enableAsyncFileLogging(logFile, ASYNC_LOG_CAPACITY, AsyncLogWriter.OverflowPolicy.BLOCK);
         controller.enableUIView();
         commandLoop();
     }
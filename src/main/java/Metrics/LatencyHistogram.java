@@ -0,0 +1,139 @@
+package Metrics;
+// LatencyHistogram.java
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram in nanoseconds with log-linear buckets, as in HdrHistogram: values below
+ * {@link #SUB_BUCKETS} have a bucket each, and every power of two above is split into
+ * SUB_BUCKETS / 2 buckets, so any recorded value is known within about 3% up to a few hours.
+ * <p>
+ * Recording is a few atomic increments and never allocates. The buckets are striped by thread
+ * to keep concurrent recorders off each other's cache lines; a snapshot adds the stripes up.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    // up to 2^43 ns (about 2.4 hours); larger values land in the last bucket
+    private static final int MAX_BIT = 42;
+    static final int BUCKETS = HALF * (MAX_BIT - SUB_BUCKET_BITS + 3);
+    private static final int STRIPES = 4;
+
+    private final String name;
+    private final String help;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS * STRIPES);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    /**
+     * Record the time elapsed since a System.nanoTime() value.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        int stripe = (int) Thread.currentThread().threadId() & (STRIPES - 1);
+        counts.getAndIncrement(stripe * BUCKETS + index(nanos));
+        sum.add(nanos);
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            // retry with the new maximum
+        }
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        int index = HALF * (shift + 1) + (int) (value >>> shift) - HALF;
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    /**
+     * @return the highest value that falls in a bucket
+     */
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / HALF - 1;
+        long mantissa = index % HALF + HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKETS];
+        long total = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = counts.get(stripe * BUCKETS + i);
+                buckets[i] += c;
+                total += c;
+            }
+        }
+        return new Snapshot(buckets, total, sum.sum(), max.get());
+    }
+
+    /**
+     * Counts at one moment. Recordings racing with the snapshot may be missing from some figures.
+     */
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param quantile between 0 and 1, e.g. 0.99
+         * @return the value below which this fraction of the recorded values fall (upper bound of its bucket)
+         */
+        public long getValueAtQuantile(double quantile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) return Math.min(upperBound(i), max);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package Metrics;
+// MetricsRegistry.java
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Counters and latency histograms of the application, by name. Components look their metrics up
+ * once (typically into static fields) and then only record into them.
+ */
+public class MetricsRegistry {
+    private static MetricsRegistry instance;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // sorted by name, for stable output
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        if (instance == null) {
+            synchronized (MetricsRegistry.class) {
+                if (instance == null) instance = new MetricsRegistry();
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * The counter of this name, created on first use.
+     *
+     * @param name lower case words separated by underscores, e.g. "controller_commands"
+     */
+    public Counter counter(String name, String help) {
+        return counters.computeIfAbsent(name, n -> new Counter(n, help));
+    }
+
+    /**
+     * The latency histogram of this name, created on first use.
+     */
+    public LatencyHistogram histogram(String name, String help) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram(n, help));
+    }
+
+    /**
+     * One line per metric, for the console, e.g.
+     * "model_add_appointment: count=12 mean=41.2us p50=38.9us p90=52.2us p99=80.9us max=83.0us".
+     */
+    public List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Counter c : counters.values()) lines.add(c.getName() + ": " + c.get());
+        for (LatencyHistogram h : histograms.values()) {
+            LatencyHistogram.Snapshot s = h.snapshot();
+            lines.add(String.format(Locale.ROOT, "%s: count=%d mean=%s p50=%s p90=%s p99=%s max=%s", h.getName(), s.getCount(),
+                    duration(s.getMean()), duration(s.getValueAtQuantile(0.5)), duration(s.getValueAtQuantile(0.9)),
+                    duration(s.getValueAtQuantile(0.99)), duration(s.getMax())));
+        }
+        return lines;
+    }
+
+    private static String duration(double nanos) {
+        if (nanos < 1_000) return String.format(Locale.ROOT, "%.0fns", nanos);
+        if (nanos < 1_000_000) return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+        if (nanos < 1_000_000_000) return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+        return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+    }
+
+    /**
+     * All metrics in the Prometheus text exposition format: counters as "_total", histograms as
+     * summaries in seconds (quantiles, "_sum" and "_count").
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        for (Counter c : counters.values()) {
+            String name = c.getName() + "_total";
+            sb.append("# HELP ").append(name).append(' ').append(c.getHelp()).append('\n');
+            sb.append("# TYPE ").append(name).append(" counter\n");
+            sb.append(name).append(' ').append(c.get()).append('\n');
+        }
+        for (LatencyHistogram h : histograms.values()) {
+            String name = h.getName() + "_seconds";
+            LatencyHistogram.Snapshot s = h.snapshot();
+            sb.append("# HELP ").append(name).append(' ').append(h.getHelp()).append('\n');
+            sb.append("# TYPE ").append(name).append(" summary\n");
+            for (double q : QUANTILES) {
+                sb.append(name).append("{quantile=\"").append(q).append("\"} ").append(seconds(s.getValueAtQuantile(q))).append('\n');
+            }
+            sb.append(name).append("_sum ").append(seconds(s.getSum())).append('\n');
+            sb.append(name).append("_count ").append(s.getCount()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
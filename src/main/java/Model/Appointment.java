@@ -12,6 +12,8 @@ public class Appointment {
     private boolean cancelled = false;
     private boolean isHistory = false;
     private String result = "";
+    private InsuranceTier insuranceTier; // captured at booking when INSURANCE_LEVELS is active, may be null
+    private String stateLine; // cached "- " + toString(), cleared by the setters
 
     public Appointment(LocalDate date, String patient, String staff) {
         this.date = date;
@@ -20,6 +22,16 @@ public class Appointment {
         this.staff = staff;
     }
 
+    /**
+     * Restore an appointment with a known identifier (e.g. when reading archived history).
+     */
+    Appointment(UUID id, LocalDate date, String patient, String staff) {
+        this.date = date;
+        this.id = id;
+        this.patient = patient;
+        this.staff = staff;
+    }
+
     public Appointment(Appointment a) {
         this.date = a.date;
         this.id = a.id;
@@ -28,6 +40,7 @@ public class Appointment {
         this.cancelled = a.cancelled;
         this.isHistory = a.isHistory;
         this.result = a.result;
+        this.insuranceTier = a.insuranceTier;
     }
 
     @Override
@@ -36,6 +49,15 @@ public class Appointment {
                 + (cancelled ? ", CANCELLED" : "") + (isHistory ? ", HISTORY" : "") + "}";
     }
 
+    /**
+     * Line describing this appointment in the state log. Cached until the appointment changes.
+     */
+    public String getStateLine() {
+        String line = stateLine;
+        if (line == null) stateLine = line = "- " + this;
+        return line;
+    }
+
     /**
      * Preferred: get the appointment date as a LocalDate.
      */
@@ -45,6 +67,7 @@ public class Appointment {
 
     public void setDate(LocalDate newDate) {
         date = newDate;
+        stateLine = null;
     }
 
     /**
@@ -60,7 +83,10 @@ public class Appointment {
 
     public String getStaff() { return staff; }
 
-    public void setStaff(String staff) { this.staff = staff; }
+    public void setStaff(String staff) {
+        this.staff = staff;
+        stateLine = null;
+    }
 
     public boolean isCancelled() {
         return cancelled;
@@ -68,6 +94,7 @@ public class Appointment {
 
     public void setCancelled(boolean cancelled) {
         this.cancelled = cancelled;
+        stateLine = null;
     }
 
     public boolean isHistory() {
@@ -76,6 +103,7 @@ public class Appointment {
 
     public void setHistory(boolean history) {
         isHistory = history;
+        stateLine = null;
     }
 
     public String getResult() {
@@ -85,4 +113,12 @@ public class Appointment {
     public void setResult(String result) {
         this.result = result;
     }
+
+    public InsuranceTier getInsuranceTier() {
+        return insuranceTier;
+    }
+
+    public void setInsuranceTier(InsuranceTier insuranceTier) {
+        this.insuranceTier = insuranceTier;
+    }
 }
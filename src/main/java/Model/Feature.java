@@ -1,6 +1,8 @@
 package Model;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 // Feature.java
 public enum Feature {
@@ -20,12 +22,48 @@ public enum Feature {
     DYNAMIC_BUTTON("Dynamic Button Display"),
     DARK_MODE("Dark Mode UI Theme");
 
+    private static final Feature[] VALUES = values();
+    private static final Map<String, Feature> BY_NAME = new HashMap<>();
+
+    static {
+        for (Feature f : VALUES) BY_NAME.put(f.name(), f);
+    }
+
     private final String description;
 
     Feature(String description) {
         this.description = description;
     }
 
+    /**
+     * Resolve a feature by its enum name without throwing.
+     *
+     * @return the feature, or null if no feature has this name
+     */
+    public static Feature byName(String name) {
+        return BY_NAME.get(name);
+    }
+
+    /**
+     * Feature at the given bit index (its ordinal).
+     */
+    public static Feature fromBit(int index) {
+        return VALUES[index];
+    }
+
+    /**
+     * Bit of this feature in a configuration bitmask.
+     */
+    public long bit() {
+        return 1L << ordinal();
+    }
+
+    public static long mask(Iterable<Feature> features) {
+        long mask = 0L;
+        for (Feature f : features) mask |= f.bit();
+        return mask;
+    }
+
     public static List<Feature> getAllFeatures() {
         return List.of(Feature.values());
     }
@@ -51,5 +89,5 @@ public enum Feature {
         return isMandatory(this);
     }
 
-    // TODO: cross-tree constraints can be added here as needed
+    // cross-tree constraints are declared in FeatureModel
 }
@@ -0,0 +1,12 @@
+package Model;
+
+// FeatureChangeListener.java
+public interface FeatureChangeListener {
+    /**
+     * Called after a new feature configuration has been published.
+     *
+     * @param previous the configuration that was replaced
+     * @param current  the configuration now in effect
+     */
+    void onFeaturesChanged(FeatureSnapshot previous, FeatureSnapshot current);
+}
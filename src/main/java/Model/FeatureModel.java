@@ -0,0 +1,292 @@
+package Model;
+// FeatureModel.java
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compiled feature model: the known and mandatory features and the constraints between them,
+ * all expressed as bitmasks over {@link Feature#bit()}.
+ * <p>
+ * A configuration is a long with one bit per active feature. Every constraint is compiled to a
+ * (kind, condition mask, target mask) triple, so validating a configuration is a short loop of
+ * AND/compare operations without any allocation.
+ * <p>
+ * The textual format is the one of features.txt, one group per line:
+ * <pre>
+ * Feature/Mandatory/APPOINTMENTS-MEDICAL_HISTORY
+ * Feature/Optional/REMINDERS-DARK_MODE
+ * Constraint/Requires/FAST_SCHEDULING-PREMIUM_SERVICE_ACCESS
+ * Constraint/Excludes/A-B
+ * </pre>
+ * Group kinds are Mandatory, Optional, Or and Alternative. A parent that is not a {@link Feature}
+ * is an abstract group (such as the root "Feature") and is always considered present.
+ */
+public final class FeatureModel {
+    private static final byte REQUIRES = 0;     // condition -> all target bits set
+    private static final byte EXCLUDES = 1;     // condition -> no target bit set
+    private static final byte AT_LEAST_ONE = 2; // condition -> at least one target bit set
+    private static final byte AT_MOST_ONE = 3;  // condition -> at most one target bit set
+
+    private final long knownMask;
+    private final long mandatoryMask;
+    // constraint i: kinds[i], ifMasks[i] (0 = unconditional), thenMasks[i]
+    private final byte[] kinds;
+    private final long[] ifMasks;
+    private final long[] thenMasks;
+    private final String[] descriptions;
+
+    private FeatureModel(long knownMask, long mandatoryMask, List<Constraint> constraints) {
+        this.knownMask = knownMask;
+        this.mandatoryMask = mandatoryMask;
+        int n = constraints.size();
+        this.kinds = new byte[n];
+        this.ifMasks = new long[n];
+        this.thenMasks = new long[n];
+        this.descriptions = new String[n];
+        for (int i = 0; i < n; i++) {
+            Constraint c = constraints.get(i);
+            kinds[i] = c.kind;
+            ifMasks[i] = c.ifMask;
+            thenMasks[i] = c.thenMask;
+            descriptions[i] = c.description;
+        }
+    }
+
+    /**
+     * The model hard-coded in the application: the {@link Feature} enum groups plus the
+     * FAST_SCHEDULING requires PREMIUM_SERVICE_ACCESS constraint.
+     */
+    public static FeatureModel defaultModel() {
+        Builder b = new Builder();
+        for (Feature f : Feature.values()) {
+            if (f.isMandatory()) b.mandatory(f);
+            else b.optional(f);
+        }
+        return b.requires(Feature.FAST_SCHEDULING, Feature.PREMIUM_SERVICE_ACCESS).build();
+    }
+
+    public static FeatureModel parse(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse a feature model in the features.txt format.
+     *
+     * @throws IllegalArgumentException if a line is malformed or names an unknown feature
+     */
+    public static FeatureModel parse(List<String> lines) {
+        Builder b = new Builder();
+        for (int i = 0; i < lines.size(); i++) {
+            b.merge(compileLine(lines.get(i), i + 1));
+        }
+        return b.build();
+    }
+
+    /**
+     * Assemble a model from fragments compiled by {@link #compileLine(String, int)}.
+     * The fragments are not modified, so they can be cached and reused across reloads.
+     */
+    static FeatureModel fromFragments(List<Builder> fragments) {
+        Builder b = new Builder();
+        for (Builder fragment : fragments) b.merge(fragment);
+        return b.build();
+    }
+
+    /**
+     * Compile a single line of the textual format into a model fragment.
+     */
+    static Builder compileLine(String rawLine, int lineNumber) {
+        Builder b = new Builder();
+        String line = rawLine.trim();
+        if (line.isEmpty() || line.startsWith("#")) return b;
+
+        String[] parts = line.split("/", 3);
+        if (parts.length != 3 || parts[2].isEmpty()) {
+            throw new IllegalArgumentException("line " + lineNumber + ": expected <parent>/<kind>/<A-B-...>, got: " + line);
+        }
+        String parent = parts[0];
+        String kind = parts[1];
+        String[] names = parts[2].split("-");
+
+        if (parent.equals("Constraint")) {
+            if (names.length < 2) {
+                throw new IllegalArgumentException("line " + lineNumber + ": a constraint needs at least two features");
+            }
+            Feature source = resolve(names[0], lineNumber);
+            for (int i = 1; i < names.length; i++) {
+                Feature target = resolve(names[i], lineNumber);
+                switch (kind) {
+                    case "Requires" -> b.requires(source, target);
+                    case "Excludes" -> b.excludes(source, target);
+                    default -> throw new IllegalArgumentException("line " + lineNumber + ": unknown constraint kind " + kind);
+                }
+            }
+            return b;
+        }
+
+        b.declaredGroups.add(parent);
+        Feature parentFeature = Feature.byName(parent);
+        long parentBit = parentFeature == null ? 0L : parentFeature.bit();
+        long childMask = 0L;
+        for (String name : names) {
+            Feature child = Feature.byName(name);
+            if (child == null) {
+                // must be declared as a group on another line
+                b.referencedGroups.add(name);
+                continue;
+            }
+            childMask |= child.bit();
+            b.knownMask |= child.bit();
+            if (parentFeature != null) {
+                b.add(REQUIRES, child.bit(), parentBit, child.name() + " requires its parent " + parent);
+            }
+        }
+
+        switch (kind) {
+            case "Mandatory" -> {
+                if (parentFeature == null) b.mandatoryMask |= childMask;
+                else b.add(REQUIRES, parentBit, childMask, parent + " requires its mandatory children");
+            }
+            case "Optional" -> {
+            }
+            case "Or" -> b.add(AT_LEAST_ONE, parentBit, childMask, "at least one child of " + parent + " must be active");
+            case "Alternative" -> {
+                b.add(AT_LEAST_ONE, parentBit, childMask, "one child of " + parent + " must be active");
+                b.add(AT_MOST_ONE, parentBit, childMask, "only one child of " + parent + " can be active");
+            }
+            default -> throw new IllegalArgumentException("line " + lineNumber + ": unknown group kind " + kind);
+        }
+        return b;
+    }
+
+    private static Feature resolve(String name, int lineNumber) {
+        Feature f = Feature.byName(name);
+        if (f == null) throw new IllegalArgumentException("line " + lineNumber + ": unknown feature " + name);
+        return f;
+    }
+
+    public long getKnownMask() {
+        return knownMask;
+    }
+
+    public long getMandatoryMask() {
+        return mandatoryMask;
+    }
+
+    public boolean isKnown(Feature f) {
+        return (knownMask & f.bit()) != 0;
+    }
+
+    public boolean isMandatory(Feature f) {
+        return (mandatoryMask & f.bit()) != 0;
+    }
+
+    /**
+     * @return the index of the first constraint violated by the configuration, or -1 if it is valid
+     */
+    public int firstViolation(long mask) {
+        for (int i = 0; i < kinds.length; i++) {
+            long cond = ifMasks[i];
+            if (cond != 0 && (mask & cond) == 0) continue;
+            long hit = mask & thenMasks[i];
+            boolean ok = switch (kinds[i]) {
+                case REQUIRES -> hit == thenMasks[i];
+                case EXCLUDES -> hit == 0;
+                case AT_LEAST_ONE -> hit != 0;
+                default -> (hit & (hit - 1)) == 0;
+            };
+            if (!ok) return i;
+        }
+        return -1;
+    }
+
+    public boolean isValid(long mask) {
+        return firstViolation(mask) < 0;
+    }
+
+    public String describeConstraint(int index) {
+        return descriptions[index];
+    }
+
+    public int getConstraintCount() {
+        return kinds.length;
+    }
+
+    /**
+     * Names of the features set in a bitmask, e.g. "[APPOINTMENTS, DARK_MODE]".
+     */
+    public static String names(long mask) {
+        StringBuilder sb = new StringBuilder("[");
+        for (long m = mask; m != 0; m &= m - 1) {
+            if (sb.length() > 1) sb.append(", ");
+            sb.append(Feature.fromBit(Long.numberOfTrailingZeros(m)).name());
+        }
+        return sb.append(']').toString();
+    }
+
+    private record Constraint(byte kind, long ifMask, long thenMask, String description) {
+    }
+
+    /**
+     * Accumulates features and constraints before they are compiled into a {@link FeatureModel}.
+     */
+    public static final class Builder {
+        private long knownMask;
+        private long mandatoryMask;
+        private final List<Constraint> constraints = new ArrayList<>();
+        private final Set<String> declaredGroups = new HashSet<>();
+        private final Set<String> referencedGroups = new HashSet<>();
+
+        public Builder mandatory(Feature f) {
+            knownMask |= f.bit();
+            mandatoryMask |= f.bit();
+            return this;
+        }
+
+        public Builder optional(Feature f) {
+            knownMask |= f.bit();
+            return this;
+        }
+
+        public Builder requires(Feature source, Feature target) {
+            return add(REQUIRES, source.bit(), target.bit(), source.name() + " requires " + target.name());
+        }
+
+        public Builder excludes(Feature source, Feature target) {
+            return add(EXCLUDES, source.bit(), target.bit(), source.name() + " excludes " + target.name());
+        }
+
+        private Builder add(byte kind, long ifMask, long thenMask, String description) {
+            constraints.add(new Constraint(kind, ifMask, thenMask, description));
+            return this;
+        }
+
+        Builder merge(Builder other) {
+            knownMask |= other.knownMask;
+            mandatoryMask |= other.mandatoryMask;
+            constraints.addAll(other.constraints);
+            declaredGroups.addAll(other.declaredGroups);
+            referencedGroups.addAll(other.referencedGroups);
+            return this;
+        }
+
+        public FeatureModel build() {
+            for (String group : referencedGroups) {
+                if (!declaredGroups.contains(group)) throw new IllegalArgumentException("unknown feature " + group);
+            }
+            List<Constraint> all = new ArrayList<>(constraints.size() + 1);
+            if (mandatoryMask != 0) {
+                all.add(new Constraint(REQUIRES, 0L, mandatoryMask, "mandatory features " + names(mandatoryMask) + " must stay active"));
+            }
+            all.addAll(constraints);
+            return new FeatureModel(knownMask, mandatoryMask, all);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package Model;
+// FeatureModelLoader.java
+
+import Logger.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the feature model from a features.txt file into the model at runtime, and reloads it
+ * whenever the file changes.
+ * <p>
+ * Lines are compiled one by one and cached by their text, so a reload only recompiles the
+ * lines that were edited. The new model is only swapped in if the current configuration is
+ * valid under it; otherwise the previous model stays in effect.
+ */
+public class FeatureModelLoader implements AutoCloseable {
+    // editors usually write a file in several steps, wait for them to settle before reloading
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Path file;
+    private final SmartMedicalModel model;
+    private final Logger logger = Logger.getInstance();
+
+    private Map<String, FeatureModel.Builder> compiledLines = new HashMap<>();
+    private List<String> loadedLines = List.of();
+    private WatchService watchService;
+    private Thread watcher;
+
+    public FeatureModelLoader(Path file, SmartMedicalModel model) {
+        this.file = file.toAbsolutePath();
+        this.model = model;
+    }
+
+    /**
+     * (Re)load the feature model from the file.
+     *
+     * @return true if the file content is the model now in effect
+     */
+    public synchronized boolean reload() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.error("FeatureModel", "Cannot read " + file + ": " + e.getMessage());
+            return false;
+        }
+        if (lines.equals(loadedLines)) return true;
+
+        FeatureModel newModel;
+        Map<String, FeatureModel.Builder> compiled = new HashMap<>();
+        int recompiled = 0;
+        try {
+            List<FeatureModel.Builder> fragments = new ArrayList<>(lines.size());
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                FeatureModel.Builder fragment = compiled.get(line);
+                if (fragment == null) fragment = compiledLines.get(line);
+                if (fragment == null) {
+                    fragment = FeatureModel.compileLine(line, i + 1);
+                    recompiled++;
+                }
+                compiled.put(line, fragment);
+                fragments.add(fragment);
+            }
+            newModel = FeatureModel.fromFragments(fragments);
+        } catch (IllegalArgumentException e) {
+            logger.error("FeatureModel", "Invalid feature model in " + file + ": " + e.getMessage());
+            return false;
+        }
+
+        if (!model.replaceFeatureModel(newModel)) return false;
+        compiledLines = compiled;
+        loadedLines = lines;
+        logger.log("FeatureModel", "Loaded " + file.getFileName() + " (" + recompiled + " of " + lines.size() + " lines recompiled).");
+        return true;
+    }
+
+    /**
+     * Load the file and keep watching it for changes on a background thread.
+     */
+    public synchronized void start() throws IOException {
+        if (watcher != null) return;
+        reload();
+
+        watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watcher = new Thread(this::watchLoop, "feature-model-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.log("FeatureModel", "Watching " + file + " for changes.");
+    }
+
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean touched = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    if (context instanceof Path p && file.getFileName().equals(p)) touched = true;
+                }
+                key.reset();
+                if (!touched) continue;
+
+                Thread.sleep(SETTLE_MILLIS);
+                WatchKey more;
+                while ((more = watchService.poll()) != null) {
+                    more.pollEvents();
+                    more.reset();
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (watcher == null) return;
+        watcher.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.error("FeatureModel", "Failed to close watch service: " + e.getMessage());
+        }
+        watcher = null;
+    }
+}
@@ -0,0 +1,51 @@
+package Model;
+// FeatureSnapshot.java
+
+/**
+ * Immutable, versioned view of the active feature configuration and of the feature model it
+ * was validated against. A new snapshot is published on every successful configuration change
+ * and on every feature model reload.
+ */
+public final class FeatureSnapshot {
+    private final long mask;
+    private final long version;
+    private final FeatureModel featureModel;
+
+    FeatureSnapshot(long mask, long version, FeatureModel featureModel) {
+        this.mask = mask;
+        this.version = version;
+        this.featureModel = featureModel;
+    }
+
+    public boolean isActive(Feature feature) {
+        return (mask & feature.bit()) != 0;
+    }
+
+    /**
+     * Bitmask of the active features, see {@link Feature#bit()}.
+     */
+    public long getMask() {
+        return mask;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public FeatureModel getFeatureModel() {
+        return featureModel;
+    }
+
+    FeatureSnapshot next(long newMask) {
+        return new FeatureSnapshot(newMask, version + 1, featureModel);
+    }
+
+    FeatureSnapshot withModel(FeatureModel newModel) {
+        return new FeatureSnapshot(mask, version + 1, newModel);
+    }
+
+    @Override
+    public String toString() {
+        return "FeatureSnapshot{version=" + version + ", features=" + FeatureModel.names(mask) + "}";
+    }
+}
@@ -0,0 +1,51 @@
+package Model;
+// FeatureStrategies.java
+
+/**
+ * The behaviour implementations selected for one feature configuration.
+ * <p>
+ * Hot paths call these objects instead of testing feature flags. A new set is built whenever a
+ * configuration is published, so every call site only ever sees one implementation per
+ * configuration and stays monomorphic.
+ */
+public final class FeatureStrategies {
+    private final long version;
+    private final ReschedulingPolicy rescheduling;
+    private final ReminderPolicy reminders;
+    private final PricingPolicy pricing;
+
+    private FeatureStrategies(long version, ReschedulingPolicy rescheduling, ReminderPolicy reminders, PricingPolicy pricing) {
+        this.version = version;
+        this.rescheduling = rescheduling;
+        this.reminders = reminders;
+        this.pricing = pricing;
+    }
+
+    public static FeatureStrategies forConfiguration(FeatureSnapshot features, long feeCents, InsuranceTierCache insurance) {
+        return new FeatureStrategies(features.getVersion(),
+                features.isActive(Feature.AUTOMATIC_RESCHEDULING) ? ReschedulingPolicy.AUTOMATIC : ReschedulingPolicy.NONE,
+                features.isActive(Feature.REMINDERS) ? ReminderPolicy.DAY_BEFORE : ReminderPolicy.NONE,
+                features.isActive(Feature.INSURANCE_LEVELS)
+                        ? new PricingPolicy.Insured(feeCents, insurance)
+                        : new PricingPolicy.Flat(feeCents));
+    }
+
+    /**
+     * Version of the feature snapshot these strategies were built for.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public ReschedulingPolicy rescheduling() {
+        return rescheduling;
+    }
+
+    public ReminderPolicy reminders() {
+        return reminders;
+    }
+
+    public PricingPolicy pricing() {
+        return pricing;
+    }
+}
@@ -0,0 +1,505 @@
+package Model;
+// HistoryStore.java
+
+import Logger.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Tiered storage for the MEDICAL_HISTORY feature.
+ * <p>
+ * Recent past appointments stay in a hot in-memory list. Entries older than the hot window are
+ * moved into immutable deflate-compressed segment files, each described in memory by a sparse
+ * index (its date range). Segments are only read when a query needs them, and are then
+ * streamed record by record.
+ * <p>
+ * Every entry gets a sequence number when it is added, and a per-patient index keeps the
+ * (date, sequence) references of each patient sorted, so one patient's history can be walked
+ * newest-first without touching the other patients' entries. To decode a single archived entry,
+ * the compressor is flushed every {@link #RESTART_INTERVAL} records, so that inflating can start
+ * there, and the segment index keeps the offset of each record from its restart point.
+ */
+public class HistoryStore {
+    private static final int SEGMENT_MAGIC = 0x534D4853; // "SMHS"
+    static final int RESTART_INTERVAL = 16;
+
+    private final Path directory;
+    private final int minSegmentSize;
+    private final boolean temporary;
+    private boolean closed;
+    // hot entries by sequence number, in insertion order
+    private final LinkedHashMap<Long, Appointment> hot = new LinkedHashMap<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, PatientRefs> patientIndex = new HashMap<>();
+    private long nextSeq = 0;
+
+    private final Logger logger = Logger.getInstance();
+
+    /**
+     * @param directory      where the segment files are written
+     * @param minSegmentSize minimum number of archivable entries before a segment is written
+     */
+    public HistoryStore(Path directory, int minSegmentSize) {
+        this(directory, minSegmentSize, false);
+    }
+
+    private HistoryStore(Path directory, int minSegmentSize, boolean temporary) {
+        this.directory = directory;
+        this.minSegmentSize = minSegmentSize;
+        this.temporary = temporary;
+    }
+
+    /**
+     * Store backed by a temporary directory, removed by {@link #close()} or else when the JVM exits.
+     */
+    public static HistoryStore createTemporary(int minSegmentSize) {
+        try {
+            HistoryStore store = new HistoryStore(Files.createTempDirectory("smm-history"), minSegmentSize, true);
+            TemporaryStores.OPEN.add(store);
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create history directory", e);
+        }
+    }
+
+    /**
+     * Temporary stores not closed yet, closed by one shutdown hook rather than registering every
+     * segment file for deletion on exit (registrations that could never be released).
+     */
+    private static final class TemporaryStores {
+        static final Set<HistoryStore> OPEN = ConcurrentHashMap.newKeySet();
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> OPEN.forEach(HistoryStore::close), "history-cleanup"));
+        }
+    }
+
+    /**
+     * Delete the segment files, and the directory of a temporary store. The store is empty
+     * afterwards and does not archive anymore.
+     */
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        TemporaryStores.OPEN.remove(this);
+        for (Segment segment : segments) delete(segment.file);
+        segments.clear();
+        hot.clear();
+        patientIndex.clear();
+        if (temporary) delete(directory);
+    }
+
+    private void delete(Path path) {
+        try {
+            path.toFile().setWritable(true);
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.error("History", "Failed to delete " + path + ": " + e.getMessage());
+        }
+    }
+
+    public synchronized void addAll(Collection<Appointment> appointments) {
+        for (Appointment a : appointments) {
+            long seq = nextSeq++;
+            hot.put(seq, a);
+            patientIndex.computeIfAbsent(a.getPatient(), p -> new PatientRefs()).insert(a.getDate().toEpochDay(), seq);
+        }
+    }
+
+    public synchronized int size() {
+        int total = hot.size();
+        for (Segment s : segments) total += s.count;
+        return total;
+    }
+
+    public synchronized int getHotSize() {
+        return hot.size();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Move the hot entries dated before the cutoff into a new segment, once there are enough of them.
+     *
+     * @return the number of archived entries
+     */
+    public synchronized int archiveOlderThan(LocalDate cutoff) {
+        List<Appointment> old = new ArrayList<>();
+        long[] oldSeqs = new long[hot.size()];
+        for (Map.Entry<Long, Appointment> e : hot.entrySet()) {
+            if (e.getValue().getDate().isBefore(cutoff)) {
+                oldSeqs[old.size()] = e.getKey();
+                old.add(e.getValue());
+            }
+        }
+        if (closed || old.isEmpty() || old.size() < minSegmentSize) return 0;
+
+        try {
+            segments.add(writeSegment(segments.size(), old, Arrays.copyOf(oldSeqs, old.size())));
+        } catch (IOException e) {
+            logger.error("History", "Failed to archive " + old.size() + " entries, keeping them in memory: " + e.getMessage());
+            return 0;
+        }
+        hot.values().removeIf(a -> a.getDate().isBefore(cutoff));
+        logger.log("History", "Archived " + old.size() + " entries older than " + cutoff + " (segments: " + segments.size() + ")");
+        return old.size();
+    }
+
+    /**
+     * Stream every stored entry, archived segments first. Segments are read lazily.
+     */
+    public Stream<Appointment> stream() {
+        return stream(LocalDate.MIN, LocalDate.MAX);
+    }
+
+    /**
+     * Stream the entries dated within [from, to], skipping the segments whose date range does not overlap.
+     */
+    public Stream<Appointment> stream(LocalDate from, LocalDate to) {
+        long fromDay = from.toEpochDay();
+        long toDay = to.toEpochDay();
+        List<Segment> candidates = new ArrayList<>();
+        List<Appointment> hotSnapshot;
+        synchronized (this) {
+            for (Segment s : segments) {
+                if (s.maxDay >= fromDay && s.minDay <= toDay) candidates.add(s);
+            }
+            hotSnapshot = new ArrayList<>(hot.values());
+        }
+        return Stream.concat(candidates.stream().flatMap(Segment::stream), hotSnapshot.stream())
+                .filter(a -> {
+                    long day = a.getDate().toEpochDay();
+                    return day >= fromDay && day <= toDay;
+                });
+    }
+
+    /**
+     * Pass every stored entry to the visitor, archived segments first, without copying the hot tier.
+     * The visitor runs under the store lock.
+     */
+    public synchronized void forEach(Consumer<Appointment> visitor) {
+        for (Segment s : segments) {
+            try (Stream<Appointment> records = s.stream()) {
+                records.forEach(visitor);
+            }
+        }
+        hot.values().forEach(visitor);
+    }
+
+    /**
+     * Iterate over the history of a single patient, newest first. Entries are resolved one at a
+     * time through the per-patient index; an archived entry is decoded alone when it is reached.
+     */
+    public Iterator<Appointment> iteratorForPatient(String patient) {
+        long[] seqs;
+        synchronized (this) {
+            PatientRefs refs = patientIndex.get(patient);
+            if (refs == null) return Collections.emptyIterator();
+            seqs = Arrays.copyOf(refs.seqs, refs.size);
+        }
+        return new Iterator<>() {
+            private int next = seqs.length - 1;
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public Appointment next() {
+                if (next < 0) throw new NoSuchElementException();
+                return resolve(seqs[next--]);
+            }
+        };
+    }
+
+    /**
+     * Stream the history of a single patient, newest first.
+     */
+    public Stream<Appointment> streamForPatient(String patient) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iteratorForPatient(patient),
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    public synchronized int countForPatient(String patient) {
+        PatientRefs refs = patientIndex.get(patient);
+        return refs == null ? 0 : refs.size;
+    }
+
+    private Appointment resolve(long seq) {
+        Segment[] candidates;
+        synchronized (this) {
+            Appointment a = hot.get(seq);
+            if (a != null) return a;
+            candidates = segments.toArray(new Segment[0]);
+        }
+        // newest segments first, the newest-first walk reaches them first
+        for (int i = candidates.length - 1; i >= 0; i--) {
+            Appointment a = candidates[i].get(seq);
+            if (a != null) return a;
+        }
+        throw new IllegalStateException("History entry " + seq + " not found");
+    }
+
+    private Segment writeSegment(int number, List<Appointment> entries, long[] seqs) throws IOException {
+        Path target = directory.resolve(String.format("segment-%06d.bin", number));
+        Path tmp = directory.resolve(target.getFileName() + ".tmp");
+
+        long minDay = Long.MAX_VALUE;
+        long maxDay = Long.MIN_VALUE;
+        long[] restartOffsets = new long[(entries.size() + RESTART_INTERVAL - 1) / RESTART_INTERVAL];
+        int[] recordOffsets = new int[entries.size()];
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)) {
+            // header stored as is, records compressed after it
+            DataOutputStream header = new DataOutputStream(file);
+            header.writeInt(SEGMENT_MAGIC);
+            header.writeInt(entries.size());
+            long written = header.size();
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream(128);
+            DataOutputStream recordOut = new DataOutputStream(record);
+            byte[] buffer = new byte[1 << 16];
+            int offset = 0;
+            for (int i = 0; i < entries.size(); i++) {
+                if (i % RESTART_INTERVAL == 0) {
+                    if (i > 0) written += deflate(deflater, Deflater.FULL_FLUSH, buffer, file);
+                    restartOffsets[i / RESTART_INTERVAL] = written;
+                    offset = 0;
+                }
+                Appointment a = entries.get(i);
+                long day = a.getDate().toEpochDay();
+                minDay = Math.min(minDay, day);
+                maxDay = Math.max(maxDay, day);
+
+                record.reset();
+                writeRecord(recordOut, a);
+                recordOffsets[i] = offset;
+                offset += record.size();
+                deflater.setInput(record.toByteArray());
+                written += deflate(deflater, Deflater.NO_FLUSH, buffer, file);
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                file.write(buffer, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        target.toFile().setReadOnly();
+        return new Segment(target, seqs, restartOffsets, recordOffsets, minDay, maxDay);
+    }
+
+    /**
+     * Compress the pending input of the deflater into the file.
+     *
+     * @return the number of compressed bytes written
+     */
+    private static long deflate(Deflater deflater, int flush, byte[] buffer, OutputStream file) throws IOException {
+        long written = 0;
+        int n;
+        do {
+            n = deflater.deflate(buffer, 0, buffer.length, flush);
+            file.write(buffer, 0, n);
+            written += n;
+        } while (n == buffer.length || !deflater.needsInput());
+        return written;
+    }
+
+    private static void writeRecord(DataOutputStream out, Appointment a) throws IOException {
+        out.writeLong(a.getId().getMostSignificantBits());
+        out.writeLong(a.getId().getLeastSignificantBits());
+        out.writeLong(a.getDate().toEpochDay());
+        out.writeUTF(a.getPatient());
+        out.writeUTF(a.getStaff());
+        out.writeBoolean(a.isCancelled());
+        out.writeBoolean(a.isHistory());
+        out.writeUTF(a.getResult());
+    }
+
+    private static Appointment readRecord(DataInputStream in) throws IOException {
+        UUID id = new UUID(in.readLong(), in.readLong());
+        LocalDate date = LocalDate.ofEpochDay(in.readLong());
+        String patient = in.readUTF();
+        String staff = in.readUTF();
+        Appointment a = new Appointment(id, date, patient, staff);
+        a.setCancelled(in.readBoolean());
+        a.setHistory(in.readBoolean());
+        a.setResult(in.readUTF());
+        return a;
+    }
+
+    /**
+     * Sorted (date, sequence) references of one patient's entries.
+     */
+    private static final class PatientRefs {
+        long[] days = new long[4];
+        long[] seqs = new long[4];
+        int size;
+
+        void insert(long day, long seq) {
+            if (size == seqs.length) {
+                days = Arrays.copyOf(days, size * 2);
+                seqs = Arrays.copyOf(seqs, size * 2);
+            }
+            // entries mostly arrive in date order, so the insertion point is found from the end
+            int pos = size;
+            while (pos > 0 && days[pos - 1] > day) pos--;
+            System.arraycopy(days, pos, days, pos + 1, size - pos);
+            System.arraycopy(seqs, pos, seqs, pos + 1, size - pos);
+            days[pos] = day;
+            seqs[pos] = seq;
+            size++;
+        }
+    }
+
+    /**
+     * An immutable on-disk segment and its sparse index, with the position of every record so that
+     * one can be decoded without the others.
+     */
+    private static final class Segment {
+        final Path file;
+        final int count;
+        final long[] seqs; // sequence numbers of the records, in file order (ascending)
+        final long[] restartOffsets; // file offset where inflating can start, every RESTART_INTERVAL records
+        final int[] recordOffsets; // offset of each record in the inflated bytes from its restart point
+        final long minDay;
+        final long maxDay;
+
+        Segment(Path file, long[] seqs, long[] restartOffsets, int[] recordOffsets, long minDay, long maxDay) {
+            this.file = file;
+            this.count = seqs.length;
+            this.seqs = seqs;
+            this.restartOffsets = restartOffsets;
+            this.recordOffsets = recordOffsets;
+            this.minDay = minDay;
+            this.maxDay = maxDay;
+        }
+
+        Appointment get(long seq) {
+            if (count == 0 || seq < seqs[0] || seq > seqs[count - 1]) return null;
+            int idx = Arrays.binarySearch(seqs, seq);
+            return idx < 0 ? null : read(idx);
+        }
+
+        /**
+         * Decode the record at an index, inflating from its restart point and skipping up to it.
+         */
+        private Appointment read(int index) {
+            Inflater inflater = new Inflater(true);
+            try (InputStream raw = Files.newInputStream(file)) {
+                raw.skipNBytes(restartOffsets[index / RESTART_INTERVAL]);
+                DataInputStream in = new DataInputStream(new InflaterInputStream(raw, inflater, 4096));
+                in.skipNBytes(recordOffsets[index]);
+                return readRecord(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read history segment " + file, e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        Stream<Appointment> stream() {
+            SegmentIterator it = new SegmentIterator(this);
+            return StreamSupport.stream(Spliterators.spliterator(it, count,
+                    Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(it::close);
+        }
+    }
+
+    /**
+     * Reads the records of a segment one at a time.
+     */
+    private static final class SegmentIterator implements Iterator<Appointment> {
+        private final Segment segment;
+        private DataInputStream in;
+        private Inflater inflater;
+        private int remaining;
+
+        SegmentIterator(Segment segment) {
+            this.segment = segment;
+            this.remaining = segment.count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (remaining == 0) close();
+            return remaining > 0;
+        }
+
+        @Override
+        public Appointment next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            try {
+                if (in == null) open();
+                Appointment a = readRecord(in);
+                remaining--;
+                return a;
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Failed to read history segment " + segment.file, e);
+            }
+        }
+
+        private void open() throws IOException {
+            InputStream raw = new BufferedInputStream(Files.newInputStream(segment.file), 1 << 16);
+            inflater = new Inflater(true);
+            in = new DataInputStream(raw);
+            if (in.readInt() != SEGMENT_MAGIC) throw new IOException("bad segment header");
+            if (in.readInt() != segment.count) throw new EOFException("segment count mismatch");
+            in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(raw, inflater, 1 << 16), 1 << 16));
+        }
+
+        void close() {
+            remaining = 0;
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+                in = null;
+            }
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package Model;
+
+// InsuranceProvider.java
+public interface InsuranceProvider {
+    /**
+     * Resolve the insurance tier of a patient. Implementations may be slow (remote eligibility checks).
+     *
+     * @param patient the patient name
+     * @return the tier of the patient, never null
+     */
+    InsuranceTier lookupTier(String patient);
+}
@@ -0,0 +1,32 @@
+package Model;
+
+// InsuranceTier.java
+public enum InsuranceTier {
+    BASIC("Basic Coverage", 0),
+    STANDARD("Standard Coverage", 50),
+    PREMIUM("Premium Coverage", 80);
+
+    private final String description;
+    private final int coveragePercent;
+
+    InsuranceTier(String description, int coveragePercent) {
+        this.description = description;
+        this.coveragePercent = coveragePercent;
+    }
+
+    public int getCoveragePercent() {
+        return coveragePercent;
+    }
+
+    /**
+     * Part of a fee left to the patient once the insurance coverage is applied.
+     */
+    public long patientShare(long feeCents) {
+        return feeCents * (100 - coveragePercent) / 100;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,195 @@
+package Model;
+// InsuranceTierCache.java
+
+import Logger.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache with TTL in front of a (slow) {@link InsuranceProvider}.
+ * <p>
+ * Concurrent lookups of the same patient share a single provider call, entries older than the
+ * refresh delay are served while being reloaded in the background, and entries older than the
+ * TTL are reloaded synchronously.
+ */
+public class InsuranceTierCache implements InsuranceProvider {
+    private record Entry(InsuranceTier tier, long loadedAtNanos) {
+    }
+
+    private final InsuranceProvider provider;
+    private final Executor executor;
+    private final long ttlNanos;
+    private final long refreshAfterNanos;
+
+    private final Map<String, Entry> entries;
+    private final ConcurrentHashMap<String, CompletableFuture<InsuranceTier>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private final Logger logger = Logger.getInstance();
+
+    public InsuranceTierCache(InsuranceProvider provider, int maxEntries, long ttlMillis, long refreshAfterMillis) {
+        this(provider, maxEntries, ttlMillis, refreshAfterMillis, defaultExecutor());
+    }
+
+    public InsuranceTierCache(InsuranceProvider provider, int maxEntries, long ttlMillis, long refreshAfterMillis,
+                              Executor executor) {
+        this.provider = provider;
+        this.executor = executor;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.refreshAfterNanos = TimeUnit.MILLISECONDS.toNanos(refreshAfterMillis);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    private static Executor defaultExecutor() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "insurance-loader");
+            t.setDaemon(true);
+            return t;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Blocking lookup. Only waits on the provider when no fresh-enough entry is cached.
+     */
+    @Override
+    public InsuranceTier lookupTier(String patient) {
+        Entry e = getEntry(patient);
+        long now = System.nanoTime();
+        if (e != null && now - e.loadedAtNanos < ttlNanos) {
+            hits.increment();
+            if (now - e.loadedAtNanos >= refreshAfterNanos) refresh(patient);
+            return e.tier;
+        }
+
+        misses.increment();
+        try {
+            return load(patient).join();
+        } catch (CompletionException ex) {
+            logger.error("Insurance", "Tier lookup failed for " + patient + ": " + ex.getCause());
+            return e != null ? e.tier : InsuranceTier.BASIC;
+        }
+    }
+
+    /**
+     * Non-blocking lookup: returns the cached tier (possibly stale), or null while it is being loaded.
+     */
+    public InsuranceTier getIfPresent(String patient) {
+        Entry e = getEntry(patient);
+        if (e == null || System.nanoTime() - e.loadedAtNanos >= ttlNanos) {
+            misses.increment();
+            load(patient);
+            return e == null ? null : e.tier;
+        }
+        hits.increment();
+        if (System.nanoTime() - e.loadedAtNanos >= refreshAfterNanos) refresh(patient);
+        return e.tier;
+    }
+
+    /**
+     * Start loading the tier of a patient in the background if it is not cached yet.
+     */
+    public void prefetch(String patient) {
+        Entry e = getEntry(patient);
+        if (e == null || System.nanoTime() - e.loadedAtNanos >= refreshAfterNanos) load(patient);
+    }
+
+    private Entry getEntry(String patient) {
+        synchronized (entries) {
+            return entries.get(patient);
+        }
+    }
+
+    private void refresh(String patient) {
+        if (!inFlight.containsKey(patient)) {
+            refreshes.increment();
+            load(patient);
+        }
+    }
+
+    /**
+     * Load a tier from the provider, sharing the call with any lookup of the same patient already in flight.
+     */
+    private CompletableFuture<InsuranceTier> load(String patient) {
+        CompletableFuture<InsuranceTier> future = new CompletableFuture<>();
+        CompletableFuture<InsuranceTier> existing = inFlight.putIfAbsent(patient, future);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+
+        loads.increment();
+        try {
+            executor.execute(() -> {
+                try {
+                    InsuranceTier tier = provider.lookupTier(patient);
+                    synchronized (entries) {
+                        entries.put(patient, new Entry(tier, System.nanoTime()));
+                    }
+                    inFlight.remove(patient, future);
+                    future.complete(tier);
+                } catch (Throwable ex) {
+                    // complete in any case, or every later lookup of the patient would wait on it forever
+                    failures.increment();
+                    inFlight.remove(patient, future);
+                    future.completeExceptionally(ex);
+                    if (ex instanceof Error error) throw error;
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // e.g. the shared pool of a closed ClinicRegistry
+            failures.increment();
+            inFlight.remove(patient, future);
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    public void invalidate(String patient) {
+        synchronized (entries) {
+            entries.remove(patient);
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    /**
+     * One-line summary of the cache metrics.
+     */
+    public String getStats() {
+        return String.format("size=%d, hits=%d, misses=%d, hitRate=%.2f, loads=%d, coalesced=%d, refreshes=%d, failures=%d",
+                size(), hits.sum(), misses.sum(), getHitRate(), loads.sum(), coalesced.sum(), refreshes.sum(), failures.sum());
+    }
+}
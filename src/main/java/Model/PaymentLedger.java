@@ -0,0 +1,185 @@
+package Model;
+// PaymentLedger.java
+
+import Logger.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Append-only ledger backing the PAYMENTS feature.
+ * Entries are first collected in a pending batch and only settled (appended to the ledger and
+ * folded into the per-patient balances) once per day, on the TES DAY_PASSED tick.
+ * Entries are stored column-wise in primitive arrays so replays and balance queries stay cheap
+ * even with millions of entries.
+ */
+public class PaymentLedger implements TimeEventListener {
+    public enum EntryType {CHARGE, PAYMENT}
+
+    /**
+     * Receives ledger entries during a replay. A payment that is not linked to an appointment
+     * has both id halves set to 0.
+     */
+    public interface EntryVisitor {
+        void visit(long seq, long appointmentMsb, long appointmentLsb, String patient,
+                   EntryType type, long amountCents, long epochDay);
+    }
+
+    private static final EntryType[] TYPES = EntryType.values();
+
+    private final Columns settled = new Columns(1024);
+    private final Columns pending = new Columns(64);
+
+    // patient name <-> dense index, balances[index] is the settled balance in cents (positive = owed)
+    private final Map<String, Integer> patientIndex = new HashMap<>();
+    private final List<String> patientNames = new ArrayList<>();
+    private long[] balances = new long[64];
+
+    private final Logger logger = Logger.getInstance();
+
+    /**
+     * Queue a charge for an appointment. It is settled on the next day tick.
+     */
+    public synchronized void recordCharge(Appointment a, long amountCents, long epochDay) {
+        append(a.getId(), a.getPatient(), EntryType.CHARGE, amountCents, epochDay);
+    }
+
+    /**
+     * Queue a payment made by a patient, not linked to a specific appointment.
+     */
+    public synchronized void recordPayment(String patient, long amountCents, long epochDay) {
+        append(null, patient, EntryType.PAYMENT, -amountCents, epochDay);
+    }
+
+    private void append(UUID appointmentId, String patient, EntryType type, long signedCents, long epochDay) {
+        long msb = appointmentId == null ? 0L : appointmentId.getMostSignificantBits();
+        long lsb = appointmentId == null ? 0L : appointmentId.getLeastSignificantBits();
+        pending.append(msb, lsb, internPatient(patient), (byte) type.ordinal(), signedCents, epochDay);
+    }
+
+    private int internPatient(String patient) {
+        Integer idx = patientIndex.get(patient);
+        if (idx != null) return idx;
+        int newIdx = patientNames.size();
+        patientNames.add(patient);
+        patientIndex.put(patient, newIdx);
+        if (newIdx >= balances.length) balances = Arrays.copyOf(balances, balances.length * 2);
+        return newIdx;
+    }
+
+    /**
+     * Settle the pending batch: append it to the ledger in one copy and fold it into the balances.
+     *
+     * @return the number of entries settled
+     */
+    public synchronized int settle() {
+        int count = pending.size;
+        if (count == 0) return 0;
+
+        for (int i = 0; i < count; i++) {
+            balances[pending.patients[i]] += pending.amounts[i];
+        }
+        settled.appendAll(pending);
+        pending.size = 0;
+
+        logger.log("Ledger", "Settled " + count + " ledger entries (total " + settled.size + ").");
+        return count;
+    }
+
+    @Override
+    public void onTimeEvent(TimeEvent event, int daysAdvanced) {
+        if (event == TimeEvent.DAY_PASSED) settle();
+    }
+
+    /**
+     * Settled balance of a patient in cents, positive when the patient owes money.
+     */
+    public synchronized long getBalance(String patient) {
+        Integer idx = patientIndex.get(patient);
+        return idx == null ? 0L : balances[idx];
+    }
+
+    public synchronized int getEntryCount() {
+        return settled.size;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size;
+    }
+
+    /**
+     * Replay every settled entry in ledger order.
+     */
+    public void replay(EntryVisitor visitor) {
+        replay(0, visitor);
+    }
+
+    /**
+     * Replay the settled entries starting at sequence number fromSeq.
+     */
+    public synchronized void replay(long fromSeq, EntryVisitor visitor) {
+        for (int i = (int) Math.max(0, fromSeq); i < settled.size; i++) {
+            visitor.visit(i, settled.idMsb[i], settled.idLsb[i], patientNames.get(settled.patients[i]),
+                    TYPES[settled.types[i]], settled.amounts[i], settled.days[i]);
+        }
+    }
+
+    /**
+     * Column storage, grown by doubling.
+     */
+    private static final class Columns {
+        long[] idMsb;
+        long[] idLsb;
+        int[] patients;
+        byte[] types;
+        long[] amounts;
+        long[] days;
+        int size;
+
+        Columns(int capacity) {
+            idMsb = new long[capacity];
+            idLsb = new long[capacity];
+            patients = new int[capacity];
+            types = new byte[capacity];
+            amounts = new long[capacity];
+            days = new long[capacity];
+        }
+
+        void ensureCapacity(int required) {
+            if (required <= idMsb.length) return;
+            int capacity = Math.max(required, idMsb.length * 2);
+            idMsb = Arrays.copyOf(idMsb, capacity);
+            idLsb = Arrays.copyOf(idLsb, capacity);
+            patients = Arrays.copyOf(patients, capacity);
+            types = Arrays.copyOf(types, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            days = Arrays.copyOf(days, capacity);
+        }
+
+        void append(long msb, long lsb, int patient, byte type, long amount, long day) {
+            ensureCapacity(size + 1);
+            idMsb[size] = msb;
+            idLsb[size] = lsb;
+            patients[size] = patient;
+            types[size] = type;
+            amounts[size] = amount;
+            days[size] = day;
+            size++;
+        }
+
+        void appendAll(Columns other) {
+            ensureCapacity(size + other.size);
+            System.arraycopy(other.idMsb, 0, idMsb, size, other.size);
+            System.arraycopy(other.idLsb, 0, idLsb, size, other.size);
+            System.arraycopy(other.patients, 0, patients, size, other.size);
+            System.arraycopy(other.types, 0, types, size, other.size);
+            System.arraycopy(other.amounts, 0, amounts, size, other.size);
+            System.arraycopy(other.days, 0, days, size, other.size);
+            size += other.size;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package Model;
+
+// PricingPolicy.java
+import Logger.Logger;
+
+public interface PricingPolicy {
+    /**
+     * Called when an appointment is booked, before it is billed. Must not block.
+     */
+    void onBooking(Appointment appointment);
+
+    /**
+     * Part of the consultation fee charged to the patient for an appointment, in cents. Must not block.
+     */
+    long patientFee(Appointment appointment);
+
+    /**
+     * Every patient pays the full consultation fee.
+     */
+    final class Flat implements PricingPolicy {
+        private final long feeCents;
+
+        public Flat(long feeCents) {
+            this.feeCents = feeCents;
+        }
+
+        @Override
+        public void onBooking(Appointment appointment) {
+        }
+
+        @Override
+        public long patientFee(Appointment appointment) {
+            return feeCents;
+        }
+    }
+
+    /**
+     * INSURANCE_LEVELS: the fee is reduced by the coverage of the patient's insurance tier.
+     * The tier is captured on the appointment at booking, when the cache has it, so that billing
+     * (days later, under the model lock) never waits on the provider. Otherwise billing takes
+     * whatever the cache holds, even stale, and falls back to {@link InsuranceTier#BASIC} while
+     * the tier is loaded in the background.
+     */
+    final class Insured implements PricingPolicy {
+        private final long feeCents;
+        private final InsuranceTierCache insurance;
+
+        public Insured(long feeCents, InsuranceTierCache insurance) {
+            this.feeCents = feeCents;
+            this.insurance = insurance;
+        }
+
+        @Override
+        public void onBooking(Appointment appointment) {
+            // starts loading the tier when it is not cached
+            InsuranceTier tier = insurance.getIfPresent(appointment.getPatient());
+            if (tier != null) appointment.setInsuranceTier(tier);
+        }
+
+        @Override
+        public long patientFee(Appointment appointment) {
+            InsuranceTier tier = appointment.getInsuranceTier();
+            if (tier == null) tier = insurance.getIfPresent(appointment.getPatient());
+            if (tier == null) {
+                Logger.getInstance().warn("Insurance", "Tier of " + appointment.getPatient() + " not loaded yet, billed as " + InsuranceTier.BASIC);
+                tier = InsuranceTier.BASIC;
+            }
+            return tier.patientShare(feeCents);
+        }
+    }
+}
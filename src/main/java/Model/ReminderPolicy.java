@@ -0,0 +1,40 @@
+package Model;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.function.Consumer;
+
+// ReminderPolicy.java
+public interface ReminderPolicy {
+    /**
+     * Called once per day with the future appointments. They are mostly sorted by date, but
+     * rescheduled and follow-up appointments are appended at the end.
+     *
+     * @param notify sink for the reminder messages
+     */
+    void sendReminders(List<Appointment> futureAppointments, LocalDate today, Consumer<String> notify);
+
+    ReminderPolicy NONE = new Disabled();
+    ReminderPolicy DAY_BEFORE = new DayBefore();
+
+    final class Disabled implements ReminderPolicy {
+        @Override
+        public void sendReminders(List<Appointment> futureAppointments, LocalDate today, Consumer<String> notify) {
+        }
+    }
+
+    /**
+     * REMINDERS: remind patients of their appointments of the next day.
+     */
+    final class DayBefore implements ReminderPolicy {
+        @Override
+        public void sendReminders(List<Appointment> futureAppointments, LocalDate today, Consumer<String> notify) {
+            LocalDate tomorrow = today.plusDays(1);
+            for (Appointment a : futureAppointments) {
+                if (a.getDate().equals(tomorrow) && !a.isCancelled()) {
+                    notify.accept("Reminder: " + a.getPatient() + " has an appointment on " + tomorrow + " with " + a.getStaff());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package Model;
+
+import java.time.LocalDate;
+
+// ReschedulingPolicy.java
+public interface ReschedulingPolicy {
+    /**
+     * @return the date of the replacement appointment, or null if the appointment is not rescheduled
+     */
+    LocalDate afterDoctorUnavailable(Appointment cancelled);
+
+    /**
+     * @return the date of the follow-up appointment, or null if the appointment is only annotated
+     */
+    LocalDate afterUserIll(Appointment target);
+
+    ReschedulingPolicy NONE = new Manual();
+    ReschedulingPolicy AUTOMATIC = new Automatic();
+
+    /**
+     * Appointments are left as they are; the patient reschedules manually.
+     */
+    final class Manual implements ReschedulingPolicy {
+        @Override
+        public LocalDate afterDoctorUnavailable(Appointment cancelled) {
+            return null;
+        }
+
+        @Override
+        public LocalDate afterUserIll(Appointment target) {
+            return null;
+        }
+    }
+
+    /**
+     * AUTOMATIC_RESCHEDULING: next day when the doctor is unavailable, a week later when the patient is ill.
+     */
+    final class Automatic implements ReschedulingPolicy {
+        @Override
+        public LocalDate afterDoctorUnavailable(Appointment cancelled) {
+            return cancelled.getDate().plusDays(1);
+        }
+
+        @Override
+        public LocalDate afterUserIll(Appointment target) {
+            return target.getDate().plusDays(7);
+        }
+    }
+}
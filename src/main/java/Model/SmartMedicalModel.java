@@ -2,28 +2,86 @@ package Model;
 // SmartMedicalModel.java
 
 import Logger.Logger;
+import Metrics.Counter;
+import Metrics.LatencyHistogram;
+import Metrics.MetricsRegistry;
 import com.github.weisj.darklaf.LafManager;
 import com.github.weisj.darklaf.theme.DarculaTheme;
 import com.github.weisj.darklaf.theme.Theme;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 import java.time.LocalDate;
 
 public class SmartMedicalModel implements TimeEventListener {
+    // flat consultation fee charged when an appointment is completed
+    public static final long CONSULTATION_FEE_CENTS = 5000;
+    // past appointments older than this stay out of the heap, in archived history segments
+    public static final int HISTORY_HOT_WINDOW_DAYS = 90;
+    private static final int HISTORY_MIN_SEGMENT_SIZE = 256;
+    // returned by computeFeatureChange for a rejected change (never a real mask, features < 64)
+    private static final long INVALID_CHANGE = -1L;
+
+    // process-wide, isolated models included
+    private static final LatencyHistogram ADD_APPOINTMENT_LATENCY =
+            MetricsRegistry.getInstance().histogram("model_add_appointment", "Time to add an appointment.");
+    private static final LatencyHistogram FEATURE_CHANGE_LATENCY =
+            MetricsRegistry.getInstance().histogram("model_apply_feature_change", "Time to validate and publish a feature change.");
+    private static final Counter REJECTED_FEATURE_CHANGES =
+            MetricsRegistry.getInstance().counter("model_rejected_feature_changes", "Feature changes rejected by the feature model.");
+    private static final LatencyHistogram ADVANCE_TIME_LATENCY =
+            MetricsRegistry.getInstance().histogram("model_advance_time", "Time to process a day or week passing.");
+    private static final LatencyHistogram STATE_LOG_LATENCY =
+            MetricsRegistry.getInstance().histogram("model_state_log", "Time to get the current state log.");
+
     private static SmartMedicalModel instance;
-    private final Set<Feature> activeFeatures = new HashSet<>();
+    // published configuration: readers do a single volatile load, writers swap it atomically
+    private final AtomicReference<FeatureSnapshot> activeFeatures = new AtomicReference<>(
+            new FeatureSnapshot(Feature.mask(Feature.getMandatoryFeatures()), 0, FeatureModel.defaultModel()));
+    private final List<FeatureChangeListener> featureListeners = new CopyOnWriteArrayList<>();
     private final ArrayList<Appointment> futureAppointments = new ArrayList<>();
-    private final ArrayList<Appointment> pastAppointments = new ArrayList<>();
+    private final HistoryStore history = HistoryStore.createTemporary(HISTORY_MIN_SEGMENT_SIZE);
+    private final StateLogCache stateLog = new StateLogCache();
+    private final StateFingerprint fingerprint = new StateFingerprint();
     private final ArrayList<Notification> notifications = new ArrayList<>();
     private boolean darkTheme;
     private Theme activeTheme = new DarculaTheme();
 
     private final Logger logger = Logger.getInstance();
-    private final TimeEventSystem tes = TimeEventSystem.getInstance();
+    private final TimeEventSystem tes;
+    private final PaymentLedger ledger = new PaymentLedger();
+    private final InsuranceTierCache insurance;
+    // behaviour selected for the published configuration, rebuilt on every change
+    private final AtomicReference<FeatureStrategies> strategies;
 
     public SmartMedicalModel() {
-        activeFeatures.addAll(Feature.getMandatoryFeatures());
+        this(TimeEventSystem.getInstance());
+    }
+
+    /**
+     * Create a model driven by the given time line instead of the shared one.
+     */
+    public SmartMedicalModel(TimeEventSystem tes) {
+        this(tes, newInsuranceCache());
+    }
+
+    /**
+     * Create a model driven by the given time line, looking up insurance tiers through a cache
+     * that may be shared with other models.
+     */
+    public SmartMedicalModel(TimeEventSystem tes, InsuranceTierCache insurance) {
+        this.tes = tes;
+        this.insurance = insurance;
+        this.strategies = new AtomicReference<>(
+                FeatureStrategies.forConfiguration(activeFeatures.get(), CONSULTATION_FEE_CENTS, insurance));
         tes.registerListener(this);
+        // registered after the model so that the charges of a day are settled on the same tick
+        tes.registerListener(ledger);
+    }
+
+    public static InsuranceTierCache newInsuranceCache() {
+        return new InsuranceTierCache(new StubInsuranceProvider(200), 4096, 10 * 60_000, 5 * 60_000);
     }
 
     public static SmartMedicalModel getInstance() {
@@ -36,12 +94,18 @@ public class SmartMedicalModel implements TimeEventListener {
     }
 
     public synchronized Appointment addAppointment(String patient, String staff, LocalDate date) {
+        long start = System.nanoTime();
         Appointment a = new Appointment(date, patient, staff);
         futureAppointments.add(a);
         futureAppointments.sort(Comparator.comparing(Appointment::getDate));
+        stateLog.markFutureDirty();
+        fingerprint.addFuture(a);
+        // e.g. captures the insurance tier so that billing never waits on the eligibility provider
+        strategies.get().pricing().onBooking(a);
 
-        logger.log("Model", "Appointment added: " + a);
+        logger.log("Model", "Appointment added: {}", a);
         addNotification("Appointment added: " + a);
+        ADD_APPOINTMENT_LATENCY.recordSince(start);
         return a;
     }
 
@@ -54,10 +118,40 @@ public class SmartMedicalModel implements TimeEventListener {
     }
 
     /**
-     * Return a copy of past appointments.
+     * Return a copy of past appointments. Prefer {@link #streamPastAppointments()} which does not
+     * materialize the archived history.
+     */
+    public java.util.List<Appointment> getPastAppointments() {
+        return history.stream().collect(java.util.stream.Collectors.toList());
+    }
+
+    /**
+     * Stream the past appointments, reading archived segments lazily.
+     * The stream should be closed when not fully consumed.
      */
-    public synchronized java.util.List<Appointment> getPastAppointments() {
-        return new ArrayList<>(pastAppointments);
+    public java.util.stream.Stream<Appointment> streamPastAppointments() {
+        return history.stream();
+    }
+
+    /**
+     * Stream the past appointments dated within [from, to].
+     */
+    public java.util.stream.Stream<Appointment> streamPastAppointments(LocalDate from, LocalDate to) {
+        return history.stream(from, to);
+    }
+
+    /**
+     * Lazily iterate over the history of one patient, newest first.
+     */
+    public Iterator<Appointment> patientHistoryIterator(String patient) {
+        return history.iteratorForPatient(patient);
+    }
+
+    /**
+     * Stream the history of one patient, newest first.
+     */
+    public java.util.stream.Stream<Appointment> streamPatientHistory(String patient) {
+        return history.streamForPatient(patient);
     }
 
     /**
@@ -87,6 +181,9 @@ public class SmartMedicalModel implements TimeEventListener {
         futureAppointments.remove(index);
         futureAppointments.add(newA);
         futureAppointments.sort(Comparator.comparing(Appointment::getDate));
+        stateLog.markFutureDirty();
+        fingerprint.removeFuture(a);
+        fingerprint.addFuture(newA);
 
         logger.log("Model", "Rescheduled appointment: " + a + " -> " + newA);
         addNotification("Appointment for " + a.getPatient() + " rescheduled to " + date);
@@ -107,7 +204,10 @@ public class SmartMedicalModel implements TimeEventListener {
             logger.log("Model", "cancelAppointment: appointment already cancelled: " + a);
             return false;
         }
+        fingerprint.removeFuture(a);
         a.setCancelled(true);
+        fingerprint.addFuture(a);
+        stateLog.markFutureDirty();
         logger.log("Model", "Cancelled appointment: " + a);
         addNotification("Appointment cancelled for " + a.getPatient() + " on " + a.getDate());
         return true;
@@ -123,7 +223,10 @@ public class SmartMedicalModel implements TimeEventListener {
                     logger.log("Model", "cancelAppointmentById: already cancelled " + a);
                     return false;
                 }
+                fingerprint.removeFuture(a);
                 a.setCancelled(true);
+                fingerprint.addFuture(a);
+                stateLog.markFutureDirty();
                 logger.log("Model", "Cancelled appointment: " + a);
                 addNotification("Appointment cancelled for " + a.getPatient() + " on " + a.getDate());
                 return true;
@@ -152,6 +255,9 @@ public class SmartMedicalModel implements TimeEventListener {
 
                 futureAppointments.set(i, newA);
                 futureAppointments.sort(Comparator.comparing(Appointment::getDate));
+                stateLog.markFutureDirty();
+                fingerprint.removeFuture(a);
+                fingerprint.addFuture(newA);
                 logger.log("Model", "Rescheduled appointment: " + a + " -> " + newA);
                 addNotification("Appointment for " + a.getPatient() + " rescheduled to " + newDate);
                 return true;
@@ -209,6 +315,50 @@ public class SmartMedicalModel implements TimeEventListener {
         logger.log("Model", "All notifications cleared.");
     }
 
+    /**
+     * Record a payment made by a patient. It is settled with the next daily batch.
+     *
+     * @return false if the amount is not positive
+     */
+    public synchronized boolean recordPayment(String patient, long amountCents) {
+        if (amountCents <= 0) {
+            logger.error("Model", "recordPayment: amount must be positive, got " + amountCents + " cents for " + patient);
+            return false;
+        }
+        ledger.recordPayment(patient, amountCents, tes.getCurrentDate().toEpochDay());
+        logger.log("Model", "Payment of " + amountCents + " cents recorded for " + patient);
+        return true;
+    }
+
+    /**
+     * Settled balance of a patient in cents, positive when the patient owes money.
+     */
+    public long getBalance(String patient) {
+        return ledger.getBalance(patient);
+    }
+
+    public PaymentLedger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Insurance tier of a patient, served from the tier cache.
+     */
+    public InsuranceTier getInsuranceTier(String patient) {
+        return insurance.lookupTier(patient);
+    }
+
+    public InsuranceTierCache getInsuranceCache() {
+        return insurance;
+    }
+
+    /**
+     * Release the files of the archived history. The past appointments are dropped.
+     */
+    public void close() {
+        history.close();
+    }
+
     /**
      * Attempts to change the set of active features, enforcing feature constraints.
      *
@@ -217,71 +367,223 @@ public class SmartMedicalModel implements TimeEventListener {
      * @return true if the configuration change is valid and applied, false otherwise.
      */
     public boolean applyFeatureChange(String[] toDeactivate, String[] toActivate) {
-        Set<Feature> newActiveFeatures = new HashSet<>(activeFeatures);
+        long start = System.nanoTime();
+        boolean applied = publishFeatureChange(toDeactivate, toActivate);
+        FEATURE_CHANGE_LATENCY.recordSince(start);
+        if (!applied) REJECTED_FEATURE_CHANGES.increment();
+        return applied;
+    }
+
+    private boolean publishFeatureChange(String[] toDeactivate, String[] toActivate) {
+        while (true) {
+            FeatureSnapshot current = activeFeatures.get();
+            long newActiveFeatures = computeFeatureChange(current.getFeatureModel(), current.getMask(), toDeactivate, toActivate);
+            if (newActiveFeatures == INVALID_CHANGE) return false;
+            // nothing to publish
+            if (newActiveFeatures == current.getMask()) return true;
+
+            FeatureSnapshot next = current.next(newActiveFeatures);
+            if (activeFeatures.compareAndSet(current, next)) {
+                publishStrategies(next);
+                notifyFeatureListeners(current, next);
+                return true;
+            }
+            // another change was published in the meantime, recompute against it
+        }
+    }
+
+    /**
+     * Bitmask variant of {@link #applyFeatureChange(String[], String[])} for precompiled transitions:
+     * no name is resolved and nothing is logged unless the change is rejected.
+     * Activated bits outside the feature model are ignored, deactivated bits outside of it reject
+     * the change, as unknown names do.
+     *
+     * @return false if the change is rejected
+     */
+    public boolean applyFeatureMasks(long toDeactivate, long toActivate) {
+        while (true) {
+            FeatureSnapshot current = activeFeatures.get();
+            FeatureModel fm = current.getFeatureModel();
+            if ((toDeactivate & ~fm.getKnownMask()) != 0) {
+                logger.error("Model", "Feature not found in deactivations");
+                return false;
+            }
+            if ((toDeactivate & fm.getMandatoryMask()) != 0) {
+                logger.error("Model", "Cannot deactivate mandatory features: " + FeatureModel.names(toDeactivate & fm.getMandatoryMask()));
+                return false;
+            }
+            long newActiveFeatures = (current.getMask() & ~toDeactivate) | (toActivate & fm.getKnownMask());
+            int violation = fm.firstViolation(newActiveFeatures);
+            if (violation >= 0) {
+                logger.error("Model", "Constraint violated: " + fm.describeConstraint(violation));
+                return false;
+            }
+            // nothing to publish
+            if (newActiveFeatures == current.getMask()) return true;
+
+            FeatureSnapshot next = current.next(newActiveFeatures);
+            if (activeFeatures.compareAndSet(current, next)) {
+                publishStrategies(next);
+                notifyFeatureListeners(current, next);
+                return true;
+            }
+            // another change was published in the meantime, recompute against it
+        }
+    }
+
+    /**
+     * Compute the configuration obtained by applying the (de)activations to "current".
+     *
+     * @return the new bitmask, or INVALID_CHANGE if the change is rejected
+     */
+    private long computeFeatureChange(FeatureModel fm, long current, String[] toDeactivate, String[] toActivate) {
+        long newActiveFeatures = current;
 
         // 1. Process Deactivations
         for (String name : toDeactivate) {
             if (name.isEmpty()) continue;
-            try {
-                Feature feature = Feature.valueOf(name);
-                if (feature.isMandatory()) {
-                    logger.error("Model", "Cannot deactivate mandatory feature: " + feature);
-                    return false;
-                }
-                newActiveFeatures.remove(feature);
-            } catch (IllegalArgumentException e) {
+            Feature feature = Feature.byName(name);
+            if (feature == null || !fm.isKnown(feature)) {
                 logger.error("Model", "Feature not found: " + name);
-                return false;
+                return INVALID_CHANGE;
             }
+            if (fm.isMandatory(feature)) {
+                logger.error("Model", "Cannot deactivate mandatory feature: " + feature);
+                return INVALID_CHANGE;
+            }
+            newActiveFeatures &= ~feature.bit();
         }
 
         // 2. Process Activations
         for (String name : toActivate) {
             if (name.isEmpty()) continue;
-            try {
-                Feature feature = Feature.valueOf(name);
-                newActiveFeatures.add(feature);
-            } catch (IllegalArgumentException e) {
+            Feature feature = Feature.byName(name);
+            if (feature == null || !fm.isKnown(feature)) {
                 logger.error("Model", "Feature not found: " + name);
+                continue;
             }
+            newActiveFeatures |= feature.bit();
         }
 
-        // 3. Enforce Cross-Tree Constraints (Simplified Example: FAST_SCHEDULING REQUIRES PREMIUM_SERVICE_ACCESS)
-        if (newActiveFeatures.contains(Feature.FAST_SCHEDULING) &&
-                !newActiveFeatures.contains(Feature.PREMIUM_SERVICE_ACCESS)) {
-            logger.error("Model", "Fast Scheduling REQUIRES Premium Service Access (Simulated constraint).");
-            return false;
+        // 3. Enforce the constraints compiled in the feature model
+        int violation = fm.firstViolation(newActiveFeatures);
+        if (violation >= 0) {
+            logger.error("Model", "Constraint violated: " + fm.describeConstraint(violation));
+            return INVALID_CHANGE;
         }
+        return newActiveFeatures;
+    }
 
-        // 4. Apply Change
-        activeFeatures.clear();
-        activeFeatures.addAll(newActiveFeatures);
-        return true;
+    /**
+     * Rebuild the strategies for a newly published snapshot. Racing publishers keep the newest version.
+     */
+    private void publishStrategies(FeatureSnapshot snapshot) {
+        FeatureStrategies built = FeatureStrategies.forConfiguration(snapshot, CONSULTATION_FEE_CENTS, insurance);
+        strategies.accumulateAndGet(built, (old, neu) -> neu.getVersion() > old.getVersion() ? neu : old);
+    }
+
+    public FeatureStrategies getStrategies() {
+        return strategies.get();
+    }
+
+    private void notifyFeatureListeners(FeatureSnapshot previous, FeatureSnapshot current) {
+        for (FeatureChangeListener l : featureListeners) {
+            try {
+                l.onFeaturesChanged(previous, current);
+            } catch (Exception e) {
+                logger.error("Model", "feature listener error: " + e.getMessage());
+            }
+        }
     }
 
     public boolean isFeatureActive(Feature feature) {
-        return activeFeatures.contains(feature);
+        return activeFeatures.get().isActive(feature);
     }
 
     /**
-     * Reports the current state of the system in a log format (used by automated testing tools).
+     * The currently published feature configuration.
      */
-    public String[] getCurrentStateLog() {
-        List<String> lines = new ArrayList<>();
-        lines.add("System Status: OPERATIONAL");
-        lines.add("Active Features:");
-        for (Feature f : activeFeatures) {
-            lines.add("- " + f.name() + " (" + f.toString() + ")");
-        }
-        lines.add("Future Appointments:");
-        for (Appointment a : futureAppointments) {
-            lines.add("- " + a.toString());
+    public FeatureSnapshot getFeatureSnapshot() {
+        return activeFeatures.get();
+    }
+
+    /**
+     * Subscribe to configuration changes. Listeners run on the thread that applied the change.
+     */
+    public void addFeatureListener(FeatureChangeListener listener) {
+        featureListeners.add(listener);
+    }
+
+    public void removeFeatureListener(FeatureChangeListener listener) {
+        featureListeners.remove(listener);
+    }
+
+    public FeatureModel getFeatureModel() {
+        return activeFeatures.get().getFeatureModel();
+    }
+
+    /**
+     * Swap in a new feature model, provided it knows every active feature, keeps the mandatory
+     * features of the application mandatory, and the current configuration is valid under it.
+     * The swap is published like a configuration change, so it is atomic with respect to
+     * concurrent (de)activations.
+     *
+     * @return true if the new model is now in effect
+     */
+    public boolean replaceFeatureModel(FeatureModel newModel) {
+        long notMandatory = Feature.mask(Feature.getMandatoryFeatures()) & ~newModel.getMandatoryMask();
+        if (notMandatory != 0) {
+            logger.error("Model", "Feature model rejected, it does not declare mandatory: " + FeatureModel.names(notMandatory));
+            return false;
         }
-        lines.add("Past Appointments:");
-        for (Appointment a : pastAppointments) {
-            lines.add("- " + a.toString());
+        while (true) {
+            FeatureSnapshot current = activeFeatures.get();
+            long unknown = current.getMask() & ~newModel.getKnownMask();
+            if (unknown != 0) {
+                logger.error("Model", "Feature model rejected, it does not know the active features: " + FeatureModel.names(unknown));
+                return false;
+            }
+            int violation = newModel.firstViolation(current.getMask());
+            if (violation >= 0) {
+                logger.error("Model", "Feature model rejected, current configuration violates: "
+                        + newModel.describeConstraint(violation));
+                return false;
+            }
+            FeatureSnapshot next = current.withModel(newModel);
+            if (activeFeatures.compareAndSet(current, next)) {
+                publishStrategies(next);
+                notifyFeatureListeners(current, next);
+                logger.log("Model", "Feature model replaced (" + newModel.getConstraintCount() + " constraints).");
+                return true;
+            }
         }
-        return lines.toArray(new String[0]);
+    }
+
+    /**
+     * Reports the current state of the system in a log format (used by automated testing tools).
+     * The array is cached and shared between calls while the state is unchanged: callers must not modify it.
+     */
+    public synchronized String[] getCurrentStateLog() {
+        long start = System.nanoTime();
+        String[] log = stateLog.get(activeFeatures.get(), futureAppointments, history);
+        STATE_LOG_LATENCY.recordSince(start);
+        return log;
+    }
+
+    /**
+     * Order-independent fingerprint of the state described by {@link #getCurrentStateLog()}:
+     * equal states have equal fingerprints, without rendering them. Maintained in O(1) per change.
+     */
+    public synchronized long getStateFingerprint() {
+        return fingerprint.value(activeFeatures.get().getMask());
+    }
+
+    /**
+     * Streaming variant of {@link #getCurrentStateLog()}: passes the same lines to "out" one by one,
+     * so the state is never held in memory as a whole.
+     */
+    public synchronized void writeStateLog(StateLineSink out) throws java.io.IOException {
+        StateLogCache.write(out, activeFeatures.get(), futureAppointments, history);
     }
 
     @Override
@@ -305,26 +607,37 @@ public class SmartMedicalModel implements TimeEventListener {
     }
 
     private synchronized void handleAdvanceTime() {
+        long start = System.nanoTime();
         LocalDate today = tes.getCurrentDate();
+        PricingPolicy pricing = strategies.get().pricing();
         List<Appointment> toMove = new ArrayList<>();
         for (Appointment a : futureAppointments) {
             if (a.getDate().isBefore(today) && !a.isCancelled()) {
+                fingerprint.removeFuture(a);
                 a.setHistory(true);
                 a.setResult("Completed (time advanced)");
+                ledger.recordCharge(a, pricing.patientFee(a), today.toEpochDay());
                 toMove.add(a);
             } else if (a.isCancelled()) {
                 // cancelled appointments older than today move to history as cancelled
                 if (a.getDate().isBefore(today)) {
+                    fingerprint.removeFuture(a);
                     a.setHistory(true);
                     toMove.add(a);
                 }
             }
         }
         futureAppointments.removeAll(toMove);
-        pastAppointments.addAll(toMove);
+        history.addAll(toMove);
+        for (Appointment a : toMove) fingerprint.addPast(a);
         if (!toMove.isEmpty()) {
+            stateLog.markFutureDirty();
+            stateLog.markPastDirty();
             logger.log("Model", "Moved " + toMove.size() + " appointment(s) to history due to time advance.");
+            history.archiveOlderThan(today.minusDays(HISTORY_HOT_WINDOW_DAYS));
         }
+        strategies.get().reminders().sendReminders(futureAppointments, today, this::addNotification);
+        ADVANCE_TIME_LATENCY.recordSince(start);
     }
 
     private synchronized void handleDoctorUnavailable() {
@@ -337,16 +650,19 @@ public class SmartMedicalModel implements TimeEventListener {
         // futureAppointments is sorted by day by default so no need to search
         // for (Appointment a : futureAppointments) if (a.getDay() < earliest.getDay()) earliest = a;
 
+        fingerprint.removeFuture(earliest);
         earliest.setCancelled(true);
+        fingerprint.addFuture(earliest);
+        stateLog.markFutureDirty();
         logger.log("Model", "Doctor unavailable: cancelled appointment " + earliest);
         addNotification("Doctor unavailable: cancelled appointment for " + earliest.getPatient() + " on day " + earliest.getDate().getDayOfMonth());
 
-        if (activeFeatures.contains(Feature.AUTOMATIC_RESCHEDULING)) {
-            // reschedule to next day
-            LocalDate newDay = earliest.getDate().plusDays(1);
+        LocalDate newDay = strategies.get().rescheduling().afterDoctorUnavailable(earliest);
+        if (newDay != null) {
             Appointment res = new Appointment(earliest);
             res.setDate(newDay);
             futureAppointments.add(res);
+            fingerprint.addFuture(res);
             logger.log("Model", "AUTOMATIC_RESCHEDULING: rescheduled to day " + newDay);
             addNotification("Appointment rescheduled to day " + newDay + " for " + earliest.getPatient());
         }
@@ -360,14 +676,17 @@ public class SmartMedicalModel implements TimeEventListener {
 
         Appointment target = futureAppointments.get(0);
         target.setResult("Patient reported illness");
+        stateLog.markFutureDirty();
         addNotification("Patient reported illness for appointment on day " + target.getDate().getDayOfMonth() + " for " + target.getPatient());
-        if (activeFeatures.contains(Feature.AUTOMATIC_RESCHEDULING)) {
+        LocalDate newDay = strategies.get().rescheduling().afterUserIll(target);
+        if (newDay != null) {
+            fingerprint.removeFuture(target);
             target.setCancelled(true);
-            LocalDate newDay = target.getDate().plusDays(7);
             futureAppointments.remove(target);
             Appointment followUp = new Appointment(target);
             followUp.setDate(newDay);
             futureAppointments.add(followUp);
+            fingerprint.addFuture(followUp);
             logger.log("Model", "USER_ILL: created follow-up appointment on day " + newDay);
             addNotification("USER_ILL: created follow-up appointment on day " + newDay + " for " + target.getPatient());
         } else {
@@ -0,0 +1,78 @@
+package Model;
+// StateFingerprint.java
+
+/**
+ * Order-independent 64-bit fingerprint of the state described by the state log, maintained
+ * incrementally by the model.
+ * <p>
+ * Features use Zobrist hashing: one fixed random key per feature, XORed together for the active
+ * ones. Each appointment is hashed from the fields shown in its state line, salted by its section
+ * (future or past), and the hashes are added, so duplicates do not cancel out and removing an
+ * appointment is a subtraction. The model removes the hash of an appointment before changing it
+ * and adds it back afterwards, so every update is O(1) whatever the number of appointments.
+ */
+final class StateFingerprint {
+    private static final long FUTURE_SALT = 0x5bd1e9955bd1e995L;
+    private static final long PAST_SALT = 0x27d4eb2f165667c5L;
+    private static final long[] FEATURE_KEYS = new long[Feature.values().length];
+
+    static {
+        // fixed seed: fingerprints can be compared across runs and JVMs
+        long seed = 0x2545F4914F6CDD1DL;
+        for (int i = 0; i < FEATURE_KEYS.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            FEATURE_KEYS[i] = mix(seed);
+        }
+    }
+
+    private long future;
+    private long past;
+
+    void addFuture(Appointment a) {
+        future += hash(a, FUTURE_SALT);
+    }
+
+    void removeFuture(Appointment a) {
+        future -= hash(a, FUTURE_SALT);
+    }
+
+    void addPast(Appointment a) {
+        past += hash(a, PAST_SALT);
+    }
+
+    /**
+     * Fingerprint of the whole state for the given active feature mask.
+     */
+    long value(long featureMask) {
+        return features(featureMask) ^ mix(future + past);
+    }
+
+    static long features(long mask) {
+        long h = 0L;
+        for (long m = mask; m != 0; m &= m - 1) h ^= FEATURE_KEYS[Long.numberOfTrailingZeros(m)];
+        return h;
+    }
+
+    private static long hash(Appointment a, long salt) {
+        long h = salt;
+        h = mix(h ^ a.getId().getMostSignificantBits());
+        h = mix(h ^ a.getId().getLeastSignificantBits());
+        h = mix(h ^ a.getDate().toEpochDay());
+        h = mix(h ^ hash(a.getPatient()));
+        h = mix(h ^ hash(a.getStaff()));
+        return mix(h ^ (a.isCancelled() ? 1 : 0) ^ (a.isHistory() ? 2 : 0));
+    }
+
+    private static long hash(String s) {
+        if (s == null) return 0L;
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        return h;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
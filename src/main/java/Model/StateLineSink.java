@@ -0,0 +1,11 @@
+package Model;
+
+import java.io.IOException;
+
+// StateLineSink.java
+public interface StateLineSink {
+    /**
+     * Receives one line of the system state, in state-log order.
+     */
+    void line(String line) throws IOException;
+}
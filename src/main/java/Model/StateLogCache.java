@@ -0,0 +1,117 @@
+package Model;
+// StateLogCache.java
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Rendered state log, kept per section and only re-rendered when a section is marked dirty.
+ * <p>
+ * The feature section follows the published {@link FeatureSnapshot} version. The appointment
+ * sections are marked dirty by the model on every mutation; re-rendering them reuses the line
+ * cached in each {@link Appointment}, so only the appointments that changed are formatted again.
+ * When nothing changed, the previously returned array is returned as is.
+ */
+final class StateLogCache {
+    private static final String STATUS = "System Status: OPERATIONAL";
+    private static final String FEATURES = "Active Features:";
+    private static final String FUTURE = "Future Appointments:";
+    private static final String PAST = "Past Appointments:";
+
+    private long featureVersion = -1;
+    private FeatureModel featureModel;
+    private String[] featureLines;
+    private boolean futureDirty = true;
+    private String[] futureLines;
+    private boolean pastDirty = true;
+    private String[] pastLines;
+    private String[] state;
+
+    void markFutureDirty() {
+        futureDirty = true;
+    }
+
+    void markPastDirty() {
+        pastDirty = true;
+    }
+
+    /**
+     * The callers hold the model lock.
+     */
+    String[] get(FeatureSnapshot features, List<Appointment> future, HistoryStore history) {
+        boolean changed = state == null;
+        if (features.getVersion() != featureVersion || features.getFeatureModel() != featureModel) {
+            List<String> lines = new ArrayList<>();
+            for (Feature f : Feature.values()) {
+                if (features.isActive(f)) lines.add(featureLine(f));
+            }
+            featureLines = lines.toArray(new String[0]);
+            featureVersion = features.getVersion();
+            featureModel = features.getFeatureModel();
+            changed = true;
+        }
+        if (futureDirty) {
+            String[] lines = new String[future.size()];
+            for (int i = 0; i < lines.length; i++) lines[i] = future.get(i).getStateLine();
+            futureLines = lines;
+            futureDirty = false;
+            changed = true;
+        }
+        if (pastDirty) {
+            try (Stream<Appointment> past = history.stream()) {
+                pastLines = past.map(Appointment::getStateLine).toArray(String[]::new);
+            }
+            pastDirty = false;
+            changed = true;
+        }
+        if (!changed) return state;
+
+        String[] out = new String[4 + featureLines.length + futureLines.length + pastLines.length];
+        int pos = 0;
+        out[pos++] = STATUS;
+        out[pos++] = FEATURES;
+        System.arraycopy(featureLines, 0, out, pos, featureLines.length);
+        pos += featureLines.length;
+        out[pos++] = FUTURE;
+        System.arraycopy(futureLines, 0, out, pos, futureLines.length);
+        pos += futureLines.length;
+        out[pos++] = PAST;
+        System.arraycopy(pastLines, 0, out, pos, pastLines.length);
+        state = out;
+        return state;
+    }
+
+    /**
+     * Stream the state to a sink, line by line, without building the state array.
+     * Lines already rendered are reused, nothing is cached.
+     */
+    static void write(StateLineSink out, FeatureSnapshot features, List<Appointment> future, HistoryStore history)
+            throws IOException {
+        out.line(STATUS);
+        out.line(FEATURES);
+        for (Feature f : Feature.values()) {
+            if (features.isActive(f)) out.line(featureLine(f));
+        }
+        out.line(FUTURE);
+        for (Appointment a : future) out.line(a.getStateLine());
+        out.line(PAST);
+        try {
+            history.forEach(a -> {
+                try {
+                    out.line(a.getStateLine());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    static String featureLine(Feature f) {
+        return "- " + f.name() + " (" + f.toString() + ")";
+    }
+}
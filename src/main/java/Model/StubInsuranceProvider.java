@@ -0,0 +1,25 @@
+package Model;
+// StubInsuranceProvider.java
+
+/**
+ * Local stand-in for the eligibility provider. Tiers are derived from the patient name so that
+ * lookups are deterministic, and every lookup sleeps to simulate the provider latency.
+ */
+public class StubInsuranceProvider implements InsuranceProvider {
+    private static final InsuranceTier[] TIERS = InsuranceTier.values();
+    private final long latencyMillis;
+
+    public StubInsuranceProvider(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public InsuranceTier lookupTier(String patient) {
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return TIERS[Math.floorMod(patient.hashCode(), TIERS.length)];
+    }
+}
@@ -2,6 +2,9 @@ package Model;
 // TimeEventSystem.java
 
 import Logger.Logger;
+import Metrics.Counter;
+import Metrics.LatencyHistogram;
+import Metrics.MetricsRegistry;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -9,6 +12,10 @@ import java.util.List;
 import java.util.Random;
 
 public class TimeEventSystem {
+    private static final Counter EVENTS = MetricsRegistry.getInstance().counter("tes_events", "Time events dispatched.");
+    private static final LatencyHistogram DISPATCH_LATENCY =
+            MetricsRegistry.getInstance().histogram("tes_dispatch", "Time for all listeners to handle a time event.");
+
     private static TimeEventSystem instance;
     private final List<TimeEventListener> listeners = new ArrayList<>();
     private final Random rng = new Random();
@@ -16,7 +23,10 @@ public class TimeEventSystem {
 
     private Logger logger = Logger.getInstance();
 
-    private TimeEventSystem() {
+    /**
+     * Create a time line independent of the shared instance, e.g. for an isolated model used in a parallel test run.
+     */
+    public TimeEventSystem() {
     }
 
     public static TimeEventSystem getInstance() {
@@ -75,6 +85,7 @@ public class TimeEventSystem {
     }
 
     private void notifyListeners(TimeEvent event, int daysAdvanced) {
+        long start = System.nanoTime();
         List<TimeEventListener> snapshot;
         synchronized (this) {
             snapshot = new ArrayList<>(listeners);
@@ -86,5 +97,7 @@ public class TimeEventSystem {
                 logger.log("TES", "listener error: " + e.getMessage());
             }
         }
+        EVENTS.increment();
+        DISPATCH_LATENCY.recordSince(start);
     }
 }
@@ -2,10 +2,23 @@
 // click the <icon src="AllIcons.Actions.Execute"/> icon in the gutter.
 
 import Controller.ControllerInterface;
+import Controller.FeatureReplay;
+import Controller.LogVerifier;
+import Controller.PathIndex;
 import Controller.SmartMedicalController;
+import Controller.StateLogWriter;
+import Controller.TestLogSink;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 public class TestingToolRunner {
 
@@ -146,6 +159,159 @@ public class TestingToolRunner {
 
     }
 
+    /**
+     * Same as "executeTests", but each path's log is written through a single buffered {@link TestLogSink} held open
+     * for the whole path, instead of opening and closing the log file at every BREAKPOINT.
+     *
+     * @param format TEXT writes the usual logs{reference}-{path}.txt, BINARY writes length-prefixed logs{reference}-{path}.bin
+     * @return The number of alternative paths that were executed, or 0 if there was a problem.
+     */
+    public static int executeTestsBuffered(ControllerInterface controller, String testingToolFolder, int reference,
+                                           TestLogSink.Format format) {
+        controller.disableUIView();
+        int numberPaths = readNumberPaths(testingToolFolder, reference);
+        for (int j = 0; j < numberPaths; j++) {
+            if (!replayPath(controller, testingToolFolder, reference, j, format)) return 0;
+        }
+        return numberPaths;
+    }
+
+    /**
+     * Parallel variant of "executeTests": every alternative path is replayed on a thread pool, through its own
+     * controller obtained from "controllerFactory" (e.g. SmartMedicalController::createIsolated), so that paths do
+     * not share any model or time line. Each path writes only to its own log file, so the logs are the same as
+     * with "executeTests" as long as a path does not depend on the state left by the previous one.
+     *
+     * @param controllerFactory creates one isolated controller per path
+     * @param threads           the number of paths replayed at the same time
+     * @return The number of alternative paths that were executed, or 0 if there was a problem.
+     */
+    public static int executeTestsParallel(Supplier<? extends ControllerInterface> controllerFactory, String testingToolFolder,
+                                           int reference, int threads) {
+        return executeTestsParallel(controllerFactory, testingToolFolder, reference, threads, TestLogSink.Format.TEXT);
+    }
+
+    public static int executeTestsParallel(Supplier<? extends ControllerInterface> controllerFactory, String testingToolFolder,
+                                           int reference, int threads, TestLogSink.Format format) {
+        int numberPaths = readNumberPaths(testingToolFolder, reference);
+        if (numberPaths == 0) return 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, numberPaths)));
+        try {
+            List<Future<Boolean>> results = new ArrayList<>(numberPaths);
+            for (int j = 0; j < numberPaths; j++) {
+                int pathNumber = j;
+                results.add(pool.submit(() -> {
+                    ControllerInterface controller = controllerFactory.get();
+                    controller.disableUIView();
+                    return replayPath(controller, testingToolFolder, reference, pathNumber, format);
+                }));
+            }
+            boolean success = true;
+            for (Future<Boolean> result : results) {
+                success &= result.get();
+            }
+            return success ? numberPaths : 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            return 0;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the number of alternative paths, the number in the first line of each test suite.
+     *
+     * @return the number of paths, or 0 if the test suite could not be read
+     */
+    private static int readNumberPaths(String testingToolFolder, int reference) {
+        try {
+            return PathIndex.of(Path.of(testingToolFolder, "paths" + reference + "-0.txt")).getNumberPaths();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Looks up the (de)activation at a step of the first path in the indexed test suite, for the reports of "verifyLogsStreaming".
+     *
+     * @return the activations and deactivations, or null if the step has none or the test suite could not be read
+     */
+    private static String[][] activationsAtStep(int step, String testingToolFolder, int reference) {
+        try {
+            return PathIndex.of(Path.of(testingToolFolder, "paths" + reference + "-0.txt")).activationsAtStep(step);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Replays one alternative path through "controller" and writes its logs, as done for each path by "executeTests".
+     * The log file is truncated when the path starts.
+     *
+     * @return false if the path could not be read or a (de)activation failed
+     */
+    private static boolean replayPath(ControllerInterface controller, String testingToolFolder, int reference, int j,
+                                      TestLogSink.Format format) {
+        Path path = Path.of(testingToolFolder, "paths" + reference + "-" + j + ".txt");
+        Path logFile = Path.of(testingToolFolder, TestLogSink.fileName(reference, j, format));
+        int stepCounter = 0;
+
+        PathIndex index;
+        try {
+            index = PathIndex.of(path);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        try (TestLogSink log = new TestLogSink(logFile, format)) {
+            if (controller instanceof SmartMedicalController smc) {
+                // precompiled bitmask transitions, no name resolution nor logging per transition
+                int[] steps = new int[1];
+                try {
+                    FeatureReplay.compile(index).run(smc, step -> {
+                        steps[0]++;
+                        log.writeState(controller);
+                    });
+                } catch (RuntimeException e) {
+                    System.out.println("Error detected while executing the (de)activations of features.\n"
+                            + "It occurred in: test reference " + reference + ", path number " + j + ", after " + steps[0] + " system verification(s).");
+                    return false;
+                }
+                return true;
+            }
+            for (int operation : index.getOperations()) {
+                if (operation == PathIndex.BREAKPOINT) {
+                    stepCounter++;
+                    log.writeState(controller);
+                    continue;
+                }
+                String[] activations = index.getActivations(operation);
+                String[] deactivations = index.getDeactivations(operation);
+                try {
+                    controller.activate(deactivations, activations);
+                } catch (Exception e) {
+                    System.out.println("Error detected while executing the (de)activations of features.\n"
+                            + "The features activated were: " + String.join("-", activations)
+                            + "\nThe features deactivated were: " + String.join("-", deactivations)
+                            + "\nIt occurred in: test reference " + reference + ", path number " + j + ", after " + stepCounter + " system verification(s).");
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return true;
+    }
+
     /**
      * The "activationsAtSpecificStep" method should not be modified.
      * This method fetches the (de)activation at the specified step, in the specific suite, for testing purposes.
@@ -251,6 +417,56 @@ public class TestingToolRunner {
         return discrepancies;
     }
 
+    /**
+     * Streaming variant of "verifyLogs", with the same report: the logs are hashed in parallel by {@link LogVerifier}
+     * and only the states that differ are kept in memory. It applies the default rule of "compareLogs"
+     * (same lines in any order, same number of lines); custom rules added to "compareLogs" are not seen by it.
+     *
+     * @param format the format the logs were written in (see executeTestsBuffered)
+     */
+    public static List<String> verifyLogsStreaming(String testingToolFolder, int reference, int numberPaths, TestLogSink.Format format) {
+        List<String> discrepancies = new ArrayList<>();
+
+        List<Path> logs = new ArrayList<>(numberPaths);
+        for (int i = 0; i < numberPaths; i++) {
+            logs.add(Path.of(testingToolFolder, TestLogSink.fileName(reference, i, format)));
+        }
+
+        List<LogVerifier.Discrepancy> found;
+        try {
+            found = new LogVerifier(Runtime.getRuntime().availableProcessors()).verify(logs, format);
+        } catch (IOException e) {
+            System.out.println("Error while reading the logs from the written files.");
+            e.printStackTrace();
+            return discrepancies;
+        }
+
+        for (LogVerifier.Discrepancy d : found) {
+            String newDiscrepancy = "\n ==================================================";
+            newDiscrepancy += "\nReference " + reference + ", at step " + d.step() + ", between path 0 and alternative path " + d.path() + ", logs are inconsistent. Logs are :\n";
+            newDiscrepancy += Arrays.toString(d.firstLog()) + "\n VS \n" + Arrays.toString(d.otherLog());
+            newDiscrepancy += "\n --------------------------------------------------";
+            newDiscrepancy += "\n These logs were created after the following transition: ";
+
+            String[][] allActivations = activationsAtStep(d.step(), testingToolFolder, reference);
+            if (allActivations == null) {
+                System.out.println("A problem occurred while searching for the (de)activations that caused an error in logs; please check by hand in the files.");
+            } else {
+                newDiscrepancy += "\n Activation of the features : " + Arrays.toString(allActivations[0]);
+                newDiscrepancy += "\n Deactivation of the features : " + Arrays.toString(allActivations[1]);
+            }
+            discrepancies.add(newDiscrepancy);
+        }
+        if (discrepancies.isEmpty()) {
+            discrepancies.add("All logs are consistent between alternative execution paths. Congratulations.");
+        } else {
+            String lastElement = discrepancies.get(discrepancies.size() - 1);
+            lastElement += "\n ==================================================";
+            discrepancies.set(discrepancies.size() - 1, lastElement);
+        }
+        return discrepancies;
+    }
+
     /**
      * The "readStatesFromFile" method should not be reimplemented nor modified.
      * It reads the logs from "filepath" and returns creates a list of all logs contained within.
@@ -326,6 +542,26 @@ public class TestingToolRunner {
         }
     }
 
+    /**
+     * Streaming variant of "writeStateToFile": the state is written while the controller produces it,
+     * through a single reusable buffer, instead of being built as a String[] first.
+     * The file format (LINEMARKER after each line, ENDSTATE after each state) is the same.
+     *
+     * @param filename   is the name of the file where the logs are written.
+     * @param controller is an instance of ControllerInterface and controls your system.
+     */
+    public static void streamStateToFile(ControllerInterface controller, String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filename),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            StateLogWriter writer = new StateLogWriter(channel);
+            writer.writeState(controller);
+            writer.flush();
+        } catch (IOException e) {
+            System.out.println("Error writing to the file: " + e.getMessage());
+            throw e;
+        }
+    }
+
     /**
      * You can modify this method to omit specific lines in your logs, for example those with timestamps, to avoid false positives.
      * <p>
@@ -386,6 +622,30 @@ public class TestingToolRunner {
         }
     }
 
+    /**
+     * Same as "launchTestingTool", but the paths are replayed in parallel by "executeTestsParallel", each through its own
+     * controller created by "controllerFactory".
+     *
+     * @param threads the number of paths replayed at the same time
+     */
+    public static void launchTestingTool(Supplier<? extends ControllerInterface> controllerFactory, String testingToolFolder, String featureModelPath,
+                                         boolean skipGeneration, int reference, boolean usingWindows, int threads) throws Exception {
+        if (!skipGeneration) {
+            boolean success = generateTests(featureModelPath, testingToolFolder, reference, usingWindows);
+            if (!success) {
+                System.out.println("Test generation failed.");
+                return;
+            }
+        }
+
+        int numberOfPaths = executeTestsParallel(controllerFactory, testingToolFolder, reference, threads);
+
+        List<String> discrepancies = verifyLogsStreaming(testingToolFolder, reference, numberOfPaths, TestLogSink.Format.TEXT);
+        for (String line : discrepancies) {
+            System.out.println(line);
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         SmartMedicalController controller = SmartMedicalController.getInstance();
 
@@ -395,6 +655,13 @@ public class TestingToolRunner {
         boolean skipGeneration = false;
         boolean usingWindows = false;
 
-        launchTestingTool(controller, "./TestingTool/", "./src/features.txt", skipGeneration, reference, usingWindows);
+        // Set to more than 1 to replay the paths in parallel, each through its own isolated controller.
+        int threads = 1;
+
+        if (threads > 1) {
+            launchTestingTool(SmartMedicalController::createIsolated, "./TestingTool/", "./src/features.txt", skipGeneration, reference, usingWindows, threads);
+        } else {
+            launchTestingTool(controller, "./TestingTool/", "./src/features.txt", skipGeneration, reference, usingWindows);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package View;
+// RefreshScheduler.java
+
+import javax.swing.SwingUtilities;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces display refresh requests into frames.
+ * <p>
+ * A request only marks the view dirty; the first request of a frame schedules one refresh after
+ * the frame interval, and every other request made before that refresh runs is folded into it.
+ * The refresh itself runs on the EDT, reads the state once, and is skipped when the state is the
+ * same (cached) array that was rendered last.
+ */
+public class RefreshScheduler {
+    private final Supplier<String[]> state;
+    private final Consumer<String[]> renderer;
+    private final long frameIntervalMillis;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "view-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private final LongAdder requested = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rendered = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private String[] lastRendered; // only touched on the EDT
+
+    /**
+     * @param state               supplies the state to display
+     * @param renderer            displays a state, called on the EDT
+     * @param frameIntervalMillis delay during which requests are coalesced
+     */
+    public RefreshScheduler(Supplier<String[]> state, Consumer<String[]> renderer, long frameIntervalMillis) {
+        this.state = state;
+        this.renderer = renderer;
+        this.frameIntervalMillis = frameIntervalMillis;
+    }
+
+    /**
+     * Mark the view dirty. Never blocks and never renders on the caller's thread.
+     */
+    public void requestRefresh() {
+        requested.increment();
+        if (!dirty.compareAndSet(false, true)) {
+            coalesced.increment();
+            return;
+        }
+        timer.schedule(() -> SwingUtilities.invokeLater(this::renderFrame), frameIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void renderFrame() {
+        // cleared before reading the state, so a mutation made during the render schedules a new frame
+        dirty.set(false);
+        String[] current = state.get();
+        if (current == lastRendered) {
+            unchanged.increment();
+            return;
+        }
+        lastRendered = current;
+        renderer.accept(current);
+        rendered.increment();
+    }
+
+    public long getRequestedCount() {
+        return requested.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public long getRenderedFrames() {
+        return rendered.sum();
+    }
+
+    public String getStats() {
+        return "requested=" + requested.sum() + ", coalesced=" + coalesced.sum()
+                + ", rendered=" + rendered.sum() + ", unchanged=" + unchanged.sum();
+    }
+}
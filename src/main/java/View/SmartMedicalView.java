@@ -99,6 +99,7 @@ public class SmartMedicalView {
     }
 
     public void updateDisplay(String[] stateLog) {
+        if (!logger.isEnabled("View", Logger.Level.INFO)) return;
         logger.log("View", "UPDATING DISPLAY based on new configuration:");
         for (String log : stateLog) {
             logger.log("View", "  " + log);